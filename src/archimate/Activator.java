@@ -10,6 +10,9 @@ import org.eclipse.ocl.uml.OCL.Helper;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import archimate.actions.ValidationListener;
+import archimate.validation.ValidationCache;
+
 /**
  * The activator class controls the plug-in life cycle
  */
@@ -18,6 +21,12 @@ public class Activator extends AbstractUIPlugin {
 	// The plug-in ID
 	public static final String PLUGIN_ID = "ArchiMate";
 
+	/**
+	 * Preference defining whether generated source files are added to the
+	 * local history when they are overwritten
+	 */
+	public static final String KEEP_HISTORY = "keepHistory";
+
 	// The shared instance
 	private static Activator plugin;
 
@@ -58,6 +67,7 @@ public class Activator extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		getPreferenceStore().setDefault(KEEP_HISTORY, true);
 	}
 
 	/*
@@ -68,6 +78,8 @@ public class Activator extends AbstractUIPlugin {
 	 * )
 	 */
 	public void stop(BundleContext context) throws Exception {
+		ValidationListener.dispose();
+		ValidationCache.disposeAll();
 		plugin = null;
 		super.stop(context);
 	}
@@ -2,12 +2,16 @@ package archimate.actions;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Iterator;
 
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.emf.common.command.UnexecutableCommand;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.jface.action.IAction;
@@ -21,6 +25,7 @@ import archimate.patterns.Pattern;
 import archimate.patterns.mvc.MVCPattern;
 import archimate.patterns.primitives.callback.CallbackPrimitive;
 import archimate.util.SourceInspector;
+import archimate.util.SourcePool;
 
 /**
  * This class implements the Generate Code action. Code is generated for the
@@ -46,7 +51,7 @@ public class GenerateCode extends ArchiMateAction {
 			try {
 				dialog.run(true, true, new IRunnableWithProgress() {
 					public void run(final IProgressMonitor monitor) {
-						error = readProfiles(myPackage, monitor);
+						generate(monitor);
 						monitor.done();
 					}
 				});
@@ -61,6 +66,27 @@ public class GenerateCode extends ArchiMateAction {
 		}
 	}
 
+	// Generates the code inside a single workspace operation, so that the
+	// resource changes of all written files are reported, and the project is
+	// built, only once when the generation has finished
+	private void generate(final IProgressMonitor monitor) {
+		IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		ISchedulingRule rule = workspace.getRoot().findMember(
+				Activator.projectRoot);
+		if (rule == null)
+			rule = workspace.getRoot();
+		try {
+			workspace.run(new IWorkspaceRunnable() {
+				public void run(IProgressMonitor monitor) {
+					error = readProfiles(myPackage, monitor);
+				}
+			}, rule, IWorkspace.AVOID_UPDATE, monitor);
+		} catch (CoreException e) {
+			System.out.println("Could not write the generated source files.");
+			e.printStackTrace();
+		}
+	}
+
 	// Reads out the profiles and creates a Pattern object for each one of them
 	private ErrorDialog readProfiles(org.eclipse.uml2.uml.Package umlPackage,
 			final IProgressMonitor monitor) {
@@ -89,16 +115,13 @@ public class GenerateCode extends ArchiMateAction {
 		}
 		// Setting up progressmonitor
 		monitor.beginTask("Initializing...", tasks);
-		// Processing patterns
-		for (Iterator<Pattern> iter = patterns.iterator(); iter.hasNext();) {
-			Pattern pattern = iter.next();
-			monitor
-					.setTaskName("Generating Code for " + pattern.name()
-							+ "...");
-			if (monitor.isCanceled()) { // return if cancel is requested
-				return null;
-			}
-			pattern.generate_code(monitor, status);
+		// Processing all patterns at once, every source file is parsed once
+		// and its changes are written once
+		monitor.setTaskName("Generating Code...");
+		Pattern.traverse(patterns, SourceInspector.GENERATE, monitor, status,
+				new SourcePool(SourceInspector.GENERATE));
+		if (monitor.isCanceled()) { // return if cancel is requested
+			return null;
 		}
 		return processStatus(monitor, status);
 	}
@@ -2,8 +2,9 @@ package archimate.actions;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Iterator;
 
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
@@ -21,6 +22,8 @@ import archimate.patterns.Pattern;
 import archimate.patterns.mvc.MVCPattern;
 import archimate.patterns.primitives.callback.CallbackPrimitive;
 import archimate.util.SourceInspector;
+import archimate.util.SourcePool;
+import archimate.util.TypeHierarchy;
 
 /**
  * This class implements the Validate Code action. The code in the source folder
@@ -61,9 +64,45 @@ public class ValidateCode extends ArchiMateAction {
 		}
 	}
 
-	// Reads out the profiles and creates a Pattern object for each one of them
+	// Reads out the profiles, validates the code and renders the report. The
+	// code is validated again on every save from now on.
 	private ErrorDialog readProfiles(org.eclipse.uml2.uml.Package umlPackage,
 			final IProgressMonitor monitor) {
+		IPath projectRoot = Activator.projectRoot;
+		IContainer umlRoot = Activator.umlRoot;
+		MultiStatus status = validate(umlPackage, projectRoot, umlRoot,
+				monitor);
+		if (status == null) { // return if cancel is requested
+			return null;
+		}
+		ValidationListener.getDefault().watch(umlPackage, projectRoot,
+				umlRoot);
+		return processStatus(monitor, status);
+	}
+
+	/**
+	 * Validates the code in the source folder of the java project with respect
+	 * to the given UML package. Only the source files that changed since the
+	 * last validation are visited again, the results of the other files are
+	 * taken from the {@link archimate.validation.ValidationCache}. One
+	 * validation runs at a time.
+	 * 
+	 * @param umlPackage
+	 *            the UML package to validate the code against
+	 * @param projectRoot
+	 *            the root of the project containing the source code
+	 * @param umlRoot
+	 *            the folder containing the UML files
+	 * @param monitor
+	 *            the progress monitor
+	 * @return The status of the validation, or <code>null</code> when it was
+	 *         canceled
+	 */
+	public static synchronized MultiStatus validate(
+			org.eclipse.uml2.uml.Package umlPackage, IPath projectRoot,
+			IContainer umlRoot, final IProgressMonitor monitor) {
+		Activator.projectRoot = projectRoot;
+		Activator.umlRoot = umlRoot;
 		EList<Profile> profiles = umlPackage.getAppliedProfiles();
 		// Calculating number of tasks
 		ArrayList<Pattern> patterns = new ArrayList<Pattern>();
@@ -87,19 +126,20 @@ public class ValidateCode extends ArchiMateAction {
 		}
 		// Setting up progressmonitor
 		monitor.beginTask("Initializing...", tasks);
-		// Processing patterns
-		for (Iterator<Pattern> iter = patterns.iterator(); iter.hasNext();) {
-			Pattern pattern = iter.next();
-			monitor
-					.setTaskName("Validating Code for " + pattern.name()
-							+ "...");
-			pattern.validate_code(monitor, status);
+		// Processing all patterns at once, every source file is parsed once
+		TypeHierarchy.getDefault().clear();
+		monitor.setTaskName("Validating Code...");
+		Pattern.traverse(patterns, SourceInspector.VALIDATE, monitor, status,
+				new SourcePool(SourceInspector.VALIDATE));
+		TypeHierarchy.getDefault().clear();
+		if (monitor.isCanceled()) { // return if cancel is requested
+			return null;
 		}
-		return processStatus(monitor, status);
+		return status;
 	}
 
 	// Goes through all applied profiles and collects the design patterns
-	private int collectPatterns(org.eclipse.uml2.uml.Package umlPackage,
+	private static int collectPatterns(org.eclipse.uml2.uml.Package umlPackage,
 			final IProgressMonitor monitor, MultiStatus status,
 			EList<Profile> profiles, ArrayList<Pattern> patterns) {
 		int tasks = 0;
@@ -121,7 +161,7 @@ public class ValidateCode extends ArchiMateAction {
 	}
 
 	// Goes through all applied profiles and collects the design primtives
-	private int collectPrimitives(org.eclipse.uml2.uml.Package umlPackage,
+	private static int collectPrimitives(org.eclipse.uml2.uml.Package umlPackage,
 			final IProgressMonitor monitor, MultiStatus status,
 			EList<Profile> profiles, ArrayList<Pattern> patterns) {
 		int tasks = 0;
@@ -145,6 +185,24 @@ public class ValidateCode extends ArchiMateAction {
 	// Generates the error dialog
 	private ErrorDialog processStatus(final IProgressMonitor monitor,
 			MultiStatus status) {
+		MultiStatus newStatus = summarize(status);
+		ErrorDialog dialog = null;
+		if (!monitor.isCanceled()) { // return if cancel is requested
+			dialog = new ErrorDialog(window.getShell(),
+					"Archimate Source Code Validation", null, newStatus, status
+							.getSeverity());
+		}
+		return dialog;
+	}
+
+	/**
+	 * Returns the report of a code validation, summarizing the given status
+	 * 
+	 * @param status
+	 *            the status of the validation
+	 * @return The report containing the given status
+	 */
+	public static MultiStatus summarize(MultiStatus status) {
 		MultiStatus newStatus = null;
 		if (status.getSeverity() == IStatus.INFO) {
 			newStatus = new MultiStatus(Activator.PLUGIN_ID, 1,
@@ -182,12 +240,6 @@ public class ValidateCode extends ArchiMateAction {
 							null));
 		}
 		newStatus.addAll(status);
-		ErrorDialog dialog = null;
-		if (!monitor.isCanceled()) { // return if cancel is requested
-			dialog = new ErrorDialog(window.getShell(),
-					"Archimate Source Code Validation", null, newStatus, status
-							.getSeverity());
-		}
-		return dialog;
+		return newStatus;
 	}
 }
\ No newline at end of file
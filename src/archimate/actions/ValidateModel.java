@@ -1,7 +1,17 @@
 package archimate.actions;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -9,6 +19,14 @@ import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.emf.common.command.UnexecutableCommand;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
@@ -16,11 +34,13 @@ import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.ocl.uml.OCL;
 import org.eclipse.ocl.uml.OCLExpression;
 import org.eclipse.ocl.uml.OCL.Helper;
+import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.Comment;
 import org.eclipse.uml2.uml.Constraint;
 import org.eclipse.uml2.uml.Element;
 import org.eclipse.uml2.uml.Profile;
 import org.eclipse.uml2.uml.Stereotype;
+import org.eclipse.uml2.uml.UMLPackage;
 import org.eclipse.uml2.uml.ValueSpecification;
 
 import archimate.Activator;
@@ -34,6 +54,80 @@ import archimate.Activator;
 public class ValidateModel extends ArchiMateAction {
 	// Dialog displaying the model validation report
 	private ErrorDialog error = null;
+	// The OCL environment of the plugin with the expressions compiled in it
+	private static Evaluator evaluator;
+	// Minimal number of model elements for checking the stereotype rules in
+	// parallel
+	private static final int PARALLEL_THRESHOLD = 1000;
+
+	// The OCL expressions compiled from a constraint
+	private static class CompiledRule {
+		// The OCL the expressions were compiled from
+		private String ocl;
+		// The compiled expressions mapped on their context classifier
+		private HashMap<Classifier, OCLExpression> expressions = new HashMap<Classifier, OCLExpression>();
+	}
+
+	// An OCL environment together with the expressions compiled in it
+	private static class Evaluator {
+		// The OCL environment
+		private OCL ocl;
+		// The helper creating queries in the environment
+		private Helper helper;
+		// The compiled OCL expressions mapped on their constraint
+		private Map<Constraint, CompiledRule> compiledRules = new WeakHashMap<Constraint, CompiledRule>();
+
+		// Creates a new evaluator for the given environment
+		private Evaluator(OCL ocl, Helper helper) {
+			this.ocl = ocl;
+			this.helper = helper;
+		}
+	}
+
+	// Copies all resources of a resource set into a new resource set. The
+	// resources defining profiles are copied first, so that the stereotype
+	// applications are copied as instances of the copied stereotypes.
+	private static class ModelCopier extends EcoreUtil.Copier {
+		// The copy of the resource set
+		private ResourceSet copy = new ResourceSetImpl();
+
+		// Creates a copy of the given resource set
+		private ModelCopier(ResourceSet resourceSet) {
+			ArrayList<Resource> resources = new ArrayList<Resource>();
+			int profiles = 0;
+			for (Resource resource : resourceSet.getResources()) {
+				if (EcoreUtil.getObjectByType(resource.getContents(),
+						UMLPackage.Literals.PROFILE) != null) {
+					resources.add(profiles++, resource);
+				} else {
+					resources.add(resource);
+				}
+			}
+			for (Resource resource : resources) {
+				Resource target = new XMIResourceImpl(resource.getURI());
+				copy.getResources().add(target);
+				target.getContents().addAll(copyAll(resource.getContents()));
+			}
+			copyReferences();
+		}
+
+		// Returns the copy of the class, when it was defined in a copied
+		// profile
+		protected EClass getTarget(EClass eClass) {
+			EObject target = get(eClass);
+			return target instanceof EClass ? (EClass) target : eClass;
+		}
+
+		// Returns the copy of the feature, when it was defined in a copied
+		// profile
+		protected EStructuralFeature getTarget(
+				EStructuralFeature eStructuralFeature) {
+			EObject target = get(eStructuralFeature);
+			if (target instanceof EStructuralFeature)
+				return (EStructuralFeature) target;
+			return eStructuralFeature;
+		}
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -141,6 +235,7 @@ public class ValidateModel extends ArchiMateAction {
 	private void readProfiles(org.eclipse.uml2.uml.Package myPack,
 			MultiStatus status, final IProgressMonitor monitor) {
 		EList<Profile> profiles = myPack.getAppliedProfiles();
+		Evaluator evaluator = getEvaluator();
 		for (Iterator<Profile> iter = profiles.iterator(); iter.hasNext();) {
 			if (monitor.isCanceled()) { // return if cancel is requested
 				return;
@@ -151,14 +246,31 @@ public class ValidateModel extends ArchiMateAction {
 				monitor.setTaskName("Checking OCL Constraints for "
 						+ profile.getName() + "...");
 			}
-			handleRules(myPack, rules, status, monitor);
+			handleRules(myPack, rules, evaluator, status, monitor);
 		}
 	}
 
-	// reads out the stereotypes rules and checks them
+	// reads out the stereotypes rules and checks them. Large models are
+	// checked in parallel on copies of the model, see
+	// readStereotypesConcurrently().
 	private void readStereotypes(org.eclipse.uml2.uml.Package myPack,
 			MultiStatus status, final IProgressMonitor monitor) {
 		EList<Element> elements = myPack.allOwnedElements();
+		int workers = Runtime.getRuntime().availableProcessors();
+		if (workers > 1 && elements.size() >= PARALLEL_THRESHOLD
+				&& myPack.eResource() != null
+				&& myPack.eResource().getResourceSet() != null) {
+			readStereotypesConcurrently(myPack.eResource().getResourceSet(),
+					elements, workers, status, monitor);
+		} else {
+			readStereotypes(elements, getEvaluator(), status, monitor);
+		}
+	}
+
+	// reads out the rules of the stereotypes applied to the given elements and
+	// checks them
+	private void readStereotypes(List<Element> elements, Evaluator evaluator,
+			MultiStatus status, final IProgressMonitor monitor) {
 		for (Iterator<Element> iter = elements.iterator(); iter.hasNext();) {
 			if (monitor.isCanceled()) { // return if cancel is requested
 				return;
@@ -176,15 +288,93 @@ public class ValidateModel extends ArchiMateAction {
 					monitor.setTaskName("Checking OCL Constraints for "
 							+ stereotype.getName() + "...");
 				}
-				handleRules(element, stereotype.getOwnedRules(), status,
-						monitor);
+				handleRules(element, stereotype.getOwnedRules(), evaluator,
+						status, monitor);
 			}
 		}
 	}
 
+	// Splits the elements in a consecutive part for every worker and checks
+	// the parts in parallel. Reading the derived features of a UML model is
+	// not safe from several threads at once, so every worker checks its part
+	// on its own copy of the resource set, with its own OCL environment. The
+	// copies are made on this thread before the workers start, and unloaded
+	// when they are done. The statuses of the parts are merged in the order of
+	// the elements, so the report is the same as when checked serially.
+	private void readStereotypesConcurrently(ResourceSet resourceSet,
+			List<Element> elements, int workers, MultiStatus status,
+			final IProgressMonitor monitor) {
+		ArrayList<ModelCopier> copies = new ArrayList<ModelCopier>();
+		ArrayList<Callable<MultiStatus>> tasks = new ArrayList<Callable<MultiStatus>>();
+		int size = (elements.size() + workers - 1) / workers;
+		for (int start = 0; start < elements.size(); start += size) {
+			if (monitor.isCanceled()) { // return if cancel is requested
+				unload(copies);
+				return;
+			}
+			ModelCopier copier = new ModelCopier(resourceSet);
+			copies.add(copier);
+			final ArrayList<Element> part = new ArrayList<Element>();
+			for (Element element : elements.subList(start, Math.min(start + size,
+					elements.size()))) {
+				Element copy = (Element) copier.get(element);
+				if (copy != null)
+					part.add(copy);
+			}
+			OCL ocl = OCL.newInstance(copier.copy);
+			ocl.setEvaluationTracingEnabled(false);
+			ocl.setParseTracingEnabled(false);
+			final Evaluator evaluator = new Evaluator(ocl, ocl
+					.createOCLHelper());
+			final MultiStatus partStatus = new MultiStatus(status.getPlugin(),
+					status.getCode(), status.getMessage(), null);
+			tasks.add(new Callable<MultiStatus>() {
+				public MultiStatus call() {
+					readStereotypes(part, evaluator, partStatus, monitor);
+					return partStatus;
+				}
+			});
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+		try {
+			for (Future<MultiStatus> result : pool.invokeAll(tasks)) {
+				status.addAll(result.get());
+			}
+		} catch (InterruptedException e) {
+			System.out
+					.println("Checking of the OCL constraints was interrupted.");
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			System.out.println("Unable to check the OCL constraints.");
+			e.printStackTrace();
+		} finally {
+			pool.shutdown();
+			unload(copies);
+		}
+	}
+
+	// Unloads the copies of the model checked by the workers
+	private void unload(List<ModelCopier> copies) {
+		for (ModelCopier copier : copies) {
+			for (Resource resource : copier.copy.getResources()) {
+				resource.unload();
+			}
+		}
+	}
+
+	// Returns the evaluator using the OCL environment of the plugin. It is
+	// kept with its compiled expressions for the next validation.
+	private static synchronized Evaluator getEvaluator() {
+		if (evaluator == null)
+			evaluator = new Evaluator(Activator.getOCL(), Activator
+					.getOCLHelper());
+		return evaluator;
+	}
+
 	// reads out the OCL and comment of a rule and runs the check
 	private void handleRules(Element element, EList<Constraint> rules,
-			MultiStatus status, final IProgressMonitor monitor) {
+			Evaluator evaluator, MultiStatus status,
+			final IProgressMonitor monitor) {
 		for (int k = 0; k < rules.size(); ++k) {
 			if (monitor.isCanceled()) { // return if cancel is requested
 				return;
@@ -197,32 +387,25 @@ public class ValidateModel extends ArchiMateAction {
 			}
 			ValueSpecification spec = rule.getSpecification();
 			String ocl = spec.stringValue();
-			checkOCL(element, ocl, comment, status);
+			checkOCL(element, rule, ocl, comment, evaluator, status);
 			monitor.worked(1);
 		}
 	}
 
 	// checks the given OCL constraint on the given element
-	private void checkOCL(Element element, String oclExpr, String comment,
-			MultiStatus status) {
+	private void checkOCL(Element element, Constraint rule, String oclExpr,
+			String comment, Evaluator evaluator, MultiStatus status) {
 		boolean valid = false;
 
-		OCL myOcl = Activator.getOCL();
+		OCL myOcl = evaluator.ocl;
 
-		Helper oclHelper = Activator.getOCLHelper();
+		Helper oclHelper = evaluator.helper;
 
 		oclHelper.setInstanceContext(element);
 
-		OCLExpression oclInv = null;
-		try {
-			oclInv = (OCLExpression) oclHelper.createQuery(oclExpr);
-		} catch (Exception e) {
-			System.out.println("Invalid OCL!\n");
-			e.printStackTrace();
-		}
+		OCLExpression oclInv = getQuery(evaluator, rule, oclExpr);
 
 		valid = myOcl.check(element, oclInv);
-		oclInv.destroy();
 
 		if (valid) {
 			status.add(new Status(IStatus.INFO, status.getPlugin(), 1,
@@ -236,4 +419,35 @@ public class ValidateModel extends ArchiMateAction {
 					+ oclExpr + "\"                                  ", null));
 		}
 	}
-}
\ No newline at end of file
+
+	// Returns the compiled OCL expression of the constraint for the context
+	// classifier of the evaluator. The expression is only parsed the first
+	// time the constraint is checked on an element of that classifier, or
+	// after the OCL of the constraint changed.
+	private OCLExpression getQuery(Evaluator evaluator, Constraint rule,
+			String oclExpr) {
+		Classifier context = evaluator.helper.getContextClassifier();
+		CompiledRule compiled = evaluator.compiledRules.get(rule);
+		if (compiled == null || !compiled.ocl.equals(oclExpr)) {
+			if (compiled != null) {
+				for (OCLExpression expression : compiled.expressions.values()) {
+					expression.destroy();
+				}
+			}
+			compiled = new CompiledRule();
+			compiled.ocl = oclExpr;
+			evaluator.compiledRules.put(rule, compiled);
+		}
+		OCLExpression oclInv = compiled.expressions.get(context);
+		if (oclInv == null) {
+			try {
+				oclInv = (OCLExpression) evaluator.helper.createQuery(oclExpr);
+				compiled.expressions.put(context, oclInv);
+			} catch (Exception e) {
+				System.out.println("Invalid OCL!\n");
+				e.printStackTrace();
+			}
+		}
+		return oclInv;
+	}
+}
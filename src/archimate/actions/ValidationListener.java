@@ -0,0 +1,187 @@
+package archimate.actions;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import archimate.Activator;
+
+/**
+ * This class validates the code again every time a compilation unit of the
+ * java project is saved. It listens to the resource changes of the workspace
+ * once the code has been validated with the Validate Code action, and starts
+ * a background job validating the code against the same UML package. The job
+ * only visits the source files whose hash changed since the last validation,
+ * together with the files depending on them; the results of the other files
+ * are replayed from the {@link archimate.validation.ValidationCache}. Problems
+ * found by the job are written to the log of the plugin.
+ * 
+ * @author Samuel Esposito
+ */
+public class ValidationListener implements IResourceChangeListener {
+
+	// Delay in milliseconds before validating, so that the saves of several
+	// files are validated together
+	private static final long DELAY = 500;
+	// The shared instance
+	private static ValidationListener listener;
+	// The UML package the code was last validated against
+	private org.eclipse.uml2.uml.Package umlPackage;
+	// The root of the project containing the source code
+	private IPath projectRoot;
+	// The folder containing the UML files
+	private IContainer umlRoot;
+	// Whether the listener is registered with the workspace
+	private boolean registered = false;
+	// The job validating the code in the background
+	private Job job = new Job("Validating Code") {
+		protected IStatus run(IProgressMonitor monitor) {
+			validate(monitor);
+			return Status.OK_STATUS;
+		}
+	};
+
+	// Creates the listener
+	private ValidationListener() {
+		job.setSystem(true);
+	}
+
+	/**
+	 * Returns the shared instance
+	 * 
+	 * @return the shared instance
+	 */
+	public static synchronized ValidationListener getDefault() {
+		if (listener == null)
+			listener = new ValidationListener();
+		return listener;
+	}
+
+	/**
+	 * Stops listening to the resource changes of the workspace and cancels
+	 * the running validation
+	 */
+	public static synchronized void dispose() {
+		if (listener != null) {
+			listener.stop();
+			listener = null;
+		}
+	}
+
+	/**
+	 * Validates the code against the given UML package every time a
+	 * compilation unit is saved from now on
+	 * 
+	 * @param umlPackage
+	 *            the UML package to validate the code against
+	 * @param projectRoot
+	 *            the root of the project containing the source code
+	 * @param umlRoot
+	 *            the folder containing the UML files
+	 */
+	public synchronized void watch(org.eclipse.uml2.uml.Package umlPackage,
+			IPath projectRoot, IContainer umlRoot) {
+		this.umlPackage = umlPackage;
+		this.projectRoot = projectRoot;
+		this.umlRoot = umlRoot;
+		if (!registered) {
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(this,
+					IResourceChangeEvent.POST_CHANGE);
+			registered = true;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org
+	 * .eclipse.core.resources.IResourceChangeEvent)
+	 */
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null)
+			return;
+		final IPath root = getProjectRoot();
+		if (root == null)
+			return;
+		final boolean[] changed = new boolean[1];
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta delta) {
+					IResource resource = delta.getResource();
+					if (changed[0] || !(resource.getFullPath().isPrefixOf(root)
+							|| root.isPrefixOf(resource.getFullPath()))) {
+						return false;
+					}
+					// Added, removed or saved compilation units
+					if (resource instanceof IFile
+							&& "java".equals(resource.getFileExtension())) {
+						int kind = delta.getKind();
+						int flags = delta.getFlags();
+						changed[0] = kind != IResourceDelta.CHANGED
+								|| (flags & IResourceDelta.CONTENT) != 0;
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			System.out.println("Unable to read the resource changes.");
+			e.printStackTrace();
+		}
+		if (changed[0])
+			job.schedule(DELAY);
+	}
+
+	// Returns the root of the project being watched
+	private synchronized IPath getProjectRoot() {
+		return projectRoot;
+	}
+
+	// Validates the code against the UML package last validated against
+	private void validate(IProgressMonitor monitor) {
+		org.eclipse.uml2.uml.Package umlPackage;
+		IPath projectRoot;
+		IContainer umlRoot;
+		synchronized (this) {
+			umlPackage = this.umlPackage;
+			projectRoot = this.projectRoot;
+			umlRoot = this.umlRoot;
+		}
+		// The package is no longer part of a model
+		if (umlPackage == null || umlPackage.eResource() == null) {
+			stop();
+			return;
+		}
+		MultiStatus status = ValidateCode.validate(umlPackage, projectRoot,
+				umlRoot, monitor);
+		monitor.done();
+		if (status != null && status.getSeverity() > IStatus.INFO
+				&& Activator.getDefault() != null) {
+			Activator.getDefault().getLog().log(ValidateCode.summarize(status));
+		}
+	}
+
+	// Stops listening to the resource changes and cancels the validation
+	private synchronized void stop() {
+		if (registered) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+			registered = false;
+		}
+		umlPackage = null;
+		projectRoot = null;
+		job.cancel();
+	}
+}
@@ -4,6 +4,9 @@ import java.util.ArrayList;
 
 import org.eclipse.uml2.uml.NamedElement;
 
+import archimate.util.ContentHash;
+import archimate.util.TagNode;
+
 public abstract class CodeElement implements ICodeElement {
 
 	// The associated UML element
@@ -18,6 +21,13 @@ public abstract class CodeElement implements ICodeElement {
 	protected boolean optional;
 	// The comment going with the method
 	protected String comment;
+	// The nodes holding the code element as a source element
+	private ArrayList<TagNode> owners = new ArrayList<TagNode>();
+	// The content hash of the code element and its children, computed when
+	// first needed and discarded when they change
+	private volatile String contentHash;
+	// The version of the names the content hash was computed for
+	private int hashVersion;
 
 	// Adds the UML element associated with the code element
 	public void addUmlElement(NamedElement umlElement) {
@@ -60,6 +70,7 @@ public abstract class CodeElement implements ICodeElement {
 	public void addChild(ICodeElement child) {
 		child.setParent(this);
 		children.add(child);
+		contentChanged();
 	}
 
 	// Adds a collection of code elements to the children of the code element
@@ -79,6 +90,65 @@ public abstract class CodeElement implements ICodeElement {
 		visited = true;
 	}
 
+	// Marks the code element as unvisited
+	public void reset() {
+		visited = false;
+	}
+
+	// Returns the hash of the specification and the children of the code
+	// element
+	public String contentHash() {
+		int version = ContentHash.version();
+		String hash = contentHash;
+		if (hash == null || hashVersion != version) {
+			StringBuilder content = new StringBuilder();
+			appendContent(content);
+			content.append(optional).append('\n').append(comment).append('\n');
+			if (children != null) {
+				for (ICodeElement child : children) {
+					content.append(child.contentHash()).append('\n');
+				}
+			}
+			hash = ContentHash.digest(content.toString());
+			hashVersion = version;
+			contentHash = hash;
+		}
+		return hash;
+	}
+
+	// Discards the content hashes of the code element, its parents and the
+	// nodes holding them
+	protected void contentChanged() {
+		ICodeElement element = this;
+		while (element instanceof CodeElement) {
+			CodeElement code = (CodeElement) element;
+			code.contentHash = null;
+			synchronized (code.owners) {
+				for (TagNode node : code.owners) {
+					node.contentChanged();
+				}
+			}
+			element = code.parent;
+		}
+	}
+
+	// Adds a node holding the code element as a source element
+	public void addOwner(TagNode node) {
+		synchronized (owners) {
+			owners.add(node);
+		}
+	}
+
+	// Removes a node that no longer holds the code element
+	public void removeOwner(TagNode node) {
+		synchronized (owners) {
+			owners.remove(node);
+		}
+	}
+
+	// Appends the specification of the code element to the content to hash
+	protected abstract void appendContent(StringBuilder content);
+
 	// Returns whether the javaClass is optional
 	public boolean optional() {
 		return optional;
@@ -87,11 +157,13 @@ public abstract class CodeElement implements ICodeElement {
 	// Marks the javaClass as optional
 	public void setOptional(boolean value) {
 		optional = value;
+		contentChanged();
 	}
 
 	// Sets the comment going with the method
 	public void setComment(String comment) {
 		this.comment = comment;
+		contentChanged();
 	}
 
 	// Whether a comment is defined or not
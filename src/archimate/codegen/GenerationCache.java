@@ -0,0 +1,138 @@
+package archimate.codegen;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import archimate.util.TagIndex;
+import archimate.util.TagNode;
+import archimate.util.TagTree;
+
+/**
+ * This class keeps the state of the last code generation of a pattern, so
+ * that a following generation only has to visit the source files that are
+ * affected by the changes in the model or in the source since then. For every
+ * archiMateTag under the root of the {@link TagTree}, the cache keeps the
+ * content hash of its node and descendants. For every source file it keeps the
+ * hash of the contents the generation started from. A file is visited again
+ * when its contents changed, or when the node of one of the archiMateTags it
+ * declares was added, removed or changed. The other files are known to contain
+ * their source elements already and are only ticked off in the tree.
+ * 
+ * @author Samuel Esposito
+ */
+public class GenerationCache {
+
+	// The caches mapped on their pattern and package base
+	private static HashMap<String, GenerationCache> caches = new HashMap<String, GenerationCache>();
+	// The content hashes of the nodes of the last generation mapped on their
+	// tag
+	private HashMap<String, String> nodeHashes;
+	// The hashes of the files of the last generation mapped on their path
+	private HashMap<String, String> hashes = new HashMap<String, String>();
+	// The content hashes of the nodes of the current generation, kept once
+	// the generation has completed
+	private HashMap<String, String> currentNodeHashes;
+
+	/**
+	 * Returns the cache for the given pattern and package base
+	 * 
+	 * @param pattern
+	 *            the name of the pattern
+	 * @param packageBase
+	 *            the package base of the pattern
+	 * @return The cache for the pattern and package base
+	 */
+	public static synchronized GenerationCache getCache(String pattern,
+			String packageBase) {
+		String key = pattern + ":" + packageBase;
+		GenerationCache cache = caches.get(key);
+		if (cache == null) {
+			cache = new GenerationCache();
+			caches.put(key, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Selects the files that have to be visited to generate the source of the
+	 * given tree. The tree has to be recorded, but not traversed yet.
+	 * 
+	 * @param tree
+	 *            the {@link TagTree} to generate source for
+	 * @param files
+	 *            the source files holding archiMateTags, mapped on the hash of
+	 *            their contents
+	 * @return The files to visit, or <code>null</code> when all files have to
+	 *         be visited
+	 */
+	public HashSet<IFile> select(TagTree tree, HashMap<IFile, String> files) {
+		currentNodeHashes = new HashMap<String, String>();
+		for (TagNode node : tree.root().children()) {
+			currentNodeHashes.put(node.tag(), node.contentHash());
+		}
+		if (nodeHashes == null)
+			return null;
+		HashSet<IFile> selected = new HashSet<IFile>();
+		for (IFile file : files.keySet()) {
+			String hash = hashes.get(file.getFullPath().toString());
+			if (hash == null || hash.length() == 0
+					|| !hash.equals(files.get(file))) {
+				selected.add(file);
+				continue;
+			}
+			for (TagIndex.Entry entry : TagIndex.getDefault().tags(file)) {
+				String last = nodeHashes.get(entry.tag());
+				String current = currentNodeHashes.get(entry.tag());
+				if (last == null ? current != null : !last.equals(current)) {
+					selected.add(file);
+					break;
+				}
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Ticks off the source elements declared in a file that is not visited,
+	 * as the visit of the file would have done
+	 * 
+	 * @param file
+	 *            the file that is not visited
+	 * @param tree
+	 *            the {@link TagTree} to tick off the source elements in
+	 * @param monitor
+	 *            the progress monitor
+	 */
+	public void replay(IFile file, TagTree tree, IProgressMonitor monitor) {
+		TagNode root = tree.root();
+		for (TagIndex.Entry entry : TagIndex.getDefault().tags(file)) {
+			if (root.hasChild(entry.tag())) {
+				TagNode node = tree.getNode(root, entry.tag());
+				node.tickOffSource(entry.name(), entry.packageName());
+				if (node.setVisited())
+					monitor.worked(1);
+			}
+		}
+	}
+
+	/**
+	 * Stores the state of a completed generation
+	 * 
+	 * @param files
+	 *            the source files holding archiMateTags, mapped on the hash of
+	 *            their contents before the generation
+	 */
+	public void update(HashMap<IFile, String> files) {
+		if (currentNodeHashes == null)
+			return;
+		nodeHashes = currentNodeHashes;
+		currentNodeHashes = null;
+		hashes.clear();
+		for (IFile file : files.keySet()) {
+			hashes.put(file.getFullPath().toString(), files.get(file));
+		}
+	}
+}
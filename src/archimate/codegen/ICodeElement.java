@@ -6,6 +6,8 @@ import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.uml2.uml.NamedElement;
 
+import archimate.util.TagNode;
+
 /**
  * Interface defining a source code element
  * 
@@ -85,6 +87,39 @@ public interface ICodeElement {
 	 */
 	public void setVisited();
 
+	/**
+	 * Discards the state recorded while traversing the source code, so that
+	 * the source element can be traversed again
+	 */
+	public void reset();
+
+	/**
+	 * Returns a hash of the specification of the code element and its
+	 * children. The state recorded while traversing the source code is left
+	 * out, except for the recorded identifiers.
+	 * 
+	 * @return The content hash of the code element
+	 */
+	public String contentHash();
+
+	/**
+	 * Adds a {@link TagNode} holding the code element as a source element, so
+	 * that its content hash is discarded when the code element changes
+	 * 
+	 * @param node
+	 *            the node holding the code element
+	 */
+	public void addOwner(TagNode node);
+
+	/**
+	 * Removes a {@link TagNode} that no longer holds the code element as a
+	 * source element
+	 * 
+	 * @param node
+	 *            the node that held the code element
+	 */
+	public void removeOwner(TagNode node);
+
 	/**
 	 * Returns whether a code element has to be visited
 	 * 
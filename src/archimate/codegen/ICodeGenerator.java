@@ -5,6 +5,7 @@ import org.eclipse.core.runtime.MultiStatus;
 
 import archimate.uml.UMLAdapter;
 import archimate.util.SourceInspector;
+import archimate.util.SourcePool;
 import archimate.util.TagTree;
 
 /**
@@ -57,6 +58,15 @@ public interface ICodeGenerator {
 	 */
 	public MultiStatus status();
 
+	/**
+	 * Returns the {@link SourcePool} shared by the generators processed in the
+	 * current action
+	 * 
+	 * @return The {@link SourcePool} for the generator, or <code>null</code>
+	 *         when the generator parses the source on its own
+	 */
+	public SourcePool sources();
+
 	/**
 	 * Estimates the number of tasks to execute for generating code
 	 * 
@@ -1,6 +1,7 @@
 package archimate.codegen;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -47,6 +48,9 @@ import archimate.uml.UMLAdapter;
 import archimate.util.JavaClass;
 import archimate.util.JavaMethod;
 import archimate.util.TagNode;
+import archimate.util.TagTree;
+import archimate.util.TypeHierarchy;
+import archimate.util.TypeHierarchy.Supertypes;
 
 /**
  * This utility class provides methods for accessing and editing source code
@@ -97,9 +101,12 @@ public class JavaHelper {
 					String archiMateTag = "";
 					for (Iterator<TextElement> ite2 = fragments.iterator(); ite2
 							.hasNext();) {
-						TextElement name = ite2.next();
-						if (name.getText().length() > 0)
-							archiMateTag += name.getText().substring(1);
+						String text = ite2.next().getText();
+						// parsed fragments start with the separating space,
+						// the fragments of generated tags do not
+						if (text.length() > 0)
+							archiMateTag += Character.isWhitespace(text
+									.charAt(0)) ? text.substring(1) : text;
 					}
 					return archiMateTag;
 				}
@@ -767,8 +774,10 @@ public class JavaHelper {
 	 *            the {@link MethodDeclaration} to compare with
 	 * @param tagnode
 	 *            the given {@link TagNode}
+	 * @return The matching source element, or <code>null</code> when none was
+	 *         found
 	 */
-	public void compare(MethodDeclaration node, ICodeElement code,
+	public ICodeElement compare(MethodDeclaration node, ICodeElement code,
 			TagNode tagnode) {
 		JavaMethod method = createMethodStub(node);
 		ICodeElement element = tagnode.getSource(method);
@@ -776,7 +785,9 @@ public class JavaHelper {
 		if (element != null && code.children().contains(element)) {
 			tagnode.setVisited(element);
 			element.diff(node, status, pattern);
+			return element;
 		}
+		return null;
 	}
 
 	/**
@@ -904,44 +915,27 @@ public class JavaHelper {
 	 *            the {@link TypeDeclaration} to analyze
 	 * @param tagnode
 	 *            the current {@link TagNode}
-	 * @param interfaces
-	 *            the restricted interfaces to trace
+	 * @param tree
+	 *            the {@link TagTree} holding the restricted interfaces to trace
 	 */
 	public void checkRestricted(TypeDeclaration node, TagNode tagnode,
-			ArrayList<JavaClass> interfaces) {
+			TagTree tree) {
 		if (!node.isInterface()) {
-			for (Iterator iter = node.superInterfaceTypes().iterator(); iter
-					.hasNext();) {
-				Object object = iter.next();
-				if (object instanceof SimpleType) {
-					SimpleType simpleType = (SimpleType) object;
-					IBinding binding = simpleType.resolveBinding();
-					if (binding instanceof ITypeBinding) {
-						ITypeBinding type = (ITypeBinding) binding;
-						IPackageBinding packageBinding = type.getPackage();
-						checkRestricted(node, tagnode, interfaces, type
-								.getName(), packageBinding.getName());
+			Supertypes supertypes = TypeHierarchy.getDefault().supertypes(node);
+			for (String interfaceType : supertypes.interfaces()) {
+				for (JavaClass interfaceRest : tree
+						.restrictedInterfaces(interfaceType)) {
+					if (!interfaceRest.optional()
+							|| !interfaceRest.intendedName().equals(
+									interfaceRest.className())) {
+						checkRestricted(node, tagnode, interfaceRest
+								.intendedName(), interfaceRest.packageName());
 					}
 				}
 			}
 		}
 	}
 
-	// Checks whether the interface implementation was restricted
-	private void checkRestricted(TypeDeclaration node, TagNode tagnode,
-			ArrayList<JavaClass> interfaces, String interfaceName,
-			String packageName) {
-		for (Iterator<JavaClass> iter = interfaces.iterator(); iter.hasNext();) {
-			JavaClass interfaceRest = iter.next();
-			if (interfaceRest.intendedName().equals(interfaceName)
-					&& interfaceRest.packageName().equals(packageName)
-					&& (!interfaceRest.optional || !interfaceRest
-							.intendedName().equals(interfaceRest.className()))) {
-				checkRestricted(node, tagnode, interfaceName, packageName);
-			}
-		}
-	}
-
 	// Checks whether the interface implementation was intended
 	private void checkRestricted(TypeDeclaration node, TagNode tagnode,
 			String interfaceName, String packageName) {
@@ -989,45 +983,37 @@ public class JavaHelper {
 	 */
 	public void checkRestricted(MethodInvocation node, TagNode tagnode,
 			ArrayList<JavaMethod> methods) {
-		for (Iterator<JavaMethod> iter = methods.iterator(); iter.hasNext();) {
-			JavaMethod method = iter.next();
-			if (node.getName().getFullyQualifiedName().equals(method.name())) {
-				ITypeBinding type = null;
-				// the method is invoked on a variable
-				if (node.getExpression() instanceof SimpleName) {
-					SimpleName simpleName = (SimpleName) node.getExpression();
-					IBinding binding = simpleName.resolveBinding();
-					if (binding instanceof IVariableBinding) {
-						IVariableBinding variable = (IVariableBinding) binding;
-						type = variable.getType();
-					}
-				}
-				// the method is invoked on an instancecreation
-				if (node.getExpression() instanceof ClassInstanceCreation) {
-					ClassInstanceCreation instance = (ClassInstanceCreation) node
-							.getExpression();
-					IBinding binding = instance.getType().resolveBinding();
-					if (binding instanceof ITypeBinding) {
-						type = (ITypeBinding) binding;
-					}
-				}
-				// check the type of the object on which the method is invoked
-				if (type != null) {
-					IPackageBinding packageBinding = type.getPackage();
-					// Check if method is defined for type
-					if (method.className().equals(type.getName())
-							&& method.packageName().equals(
-									packageBinding.getName())) {
-						checkRestricted(node, tagnode, method);
-					}
-					// Check if method is defined for an interface type
-					for (ITypeBinding interfaceType : type.getInterfaces()) {
-						if (method.className().equals(interfaceType.getName())
-								&& method.packageName().equals(
-										interfaceType.getPackage().getName())) {
-							checkRestricted(node, tagnode, method);
-						}
-					}
+		if (methods.isEmpty())
+			return;
+		ITypeBinding type = null;
+		// the method is invoked on a variable
+		if (node.getExpression() instanceof SimpleName) {
+			SimpleName simpleName = (SimpleName) node.getExpression();
+			IBinding binding = simpleName.resolveBinding();
+			if (binding instanceof IVariableBinding) {
+				IVariableBinding variable = (IVariableBinding) binding;
+				type = variable.getType();
+			}
+		}
+		// the method is invoked on an instancecreation
+		if (node.getExpression() instanceof ClassInstanceCreation) {
+			ClassInstanceCreation instance = (ClassInstanceCreation) node
+					.getExpression();
+			IBinding binding = instance.getType().resolveBinding();
+			if (binding instanceof ITypeBinding) {
+				type = (ITypeBinding) binding;
+			}
+		}
+		// check the type of the object on which the method is invoked
+		if (type != null) {
+			HashSet<String> names = TypeHierarchy.getDefault().names(type);
+			for (Iterator<JavaMethod> iter = methods.iterator(); iter.hasNext();) {
+				JavaMethod method = iter.next();
+				// Check if method is defined for the type or an interface type
+				if (node.getName().getFullyQualifiedName().equals(method.name())
+						&& names.contains(method.packageName() + "."
+								+ method.className())) {
+					checkRestricted(node, tagnode, method);
 				}
 			}
 		}
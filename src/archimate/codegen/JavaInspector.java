@@ -1,13 +1,12 @@
 package archimate.codegen;
 
-import java.util.ArrayList;
-
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 
 import archimate.util.SourceInspector;
+import archimate.util.TagContext;
 import archimate.util.TagNode;
 import archimate.util.TagTree;
 
@@ -25,6 +24,8 @@ public class JavaInspector extends ASTVisitor {
 
 	// TagTree of the ICodeGenerator at hand
 	private TagTree tree;
+	// The node and source element selected while traversing the file
+	private TagContext context;
 	// SourceInspector object to call back
 	private SourceInspector inspector;
 	// JavaHelper for accessing the source code
@@ -44,6 +45,7 @@ public class JavaInspector extends ASTVisitor {
 	public JavaInspector(SourceInspector inspector, String pattern) {
 		super(true);
 		this.tree = inspector.tree();
+		context = tree.newContext();
 		this.inspector = inspector;
 		this.monitor = inspector.monitor();
 		helper = new JavaHelper(inspector.status(), pattern);
@@ -59,7 +61,7 @@ public class JavaInspector extends ASTVisitor {
 	 */
 	public boolean visit(TypeDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasChild(tag)) {
 			TagNode self = tree.getNode(current, tag);
 			String name = helper.getName(node);
@@ -69,9 +71,9 @@ public class JavaInspector extends ASTVisitor {
 			boolean toggle = self.setVisited();
 			if (toggle)
 				monitor.worked(1);
-			tree.setCurrent(self);
+			context.setCurrent(self);
 			if (self.hasChildren() && element != null) {
-				tree.setCurrentCode(element);
+				context.setCurrentCode(element);
 				return true;
 			}
 		}
@@ -90,8 +92,8 @@ public class JavaInspector extends ASTVisitor {
 	 */
 	public void endVisit(TypeDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
-		ICodeElement currentCode = tree.currentCode();
+		TagNode current = context.current();
+		ICodeElement currentCode = context.currentCode();
 		if ((!tag.equals("")) && current.hasParent()
 				&& current.parent().hasChild(tag)) {
 			String name = helper.getName(node);
@@ -99,12 +101,12 @@ public class JavaInspector extends ASTVisitor {
 			if (current.hasChildren()) {
 				ICodeElement code = current.getSource(name, packageName);
 				if (code != null) {
-					ArrayList<TagNode> tags = tree.getUnvisited();
+					Iterable<TagNode> tags = context.getUnvisited();
 					inspector.addSourceElements(node, code, tags);
-					tree.setCurrentCode(tree.currentCode().parent());
+					context.setCurrentCode(context.currentCode().parent());
 				}
 			}
-			tree.setCurrent(current.parent());
+			context.setCurrent(current.parent());
 		}
 	}
 
@@ -118,7 +120,7 @@ public class JavaInspector extends ASTVisitor {
 	 */
 	public boolean visit(MethodDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasChild(tag)) {
 			TagNode self = tree.getNode(current, tag);
 			String name = helper.getName(node);
@@ -127,7 +129,7 @@ public class JavaInspector extends ASTVisitor {
 			boolean toggle = self.setVisited();
 			if (toggle)
 				monitor.worked(1);
-			tree.setCurrent(self);
+			context.setCurrent(self);
 			if (self.hasChildren()) {
 				return true;
 			}
@@ -146,10 +148,10 @@ public class JavaInspector extends ASTVisitor {
 	 */
 	public void endVisit(MethodDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasParent()
 				&& current.parent().hasChild(tag)) {
-			tree.setCurrent(current.parent());
+			context.setCurrent(current.parent());
 		}
 	}
 }
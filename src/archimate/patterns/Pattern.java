@@ -13,6 +13,7 @@ import archimate.codegen.ICodeGenerator;
 import archimate.patterns.primitives.callback.CallbackPrimitive;
 import archimate.uml.UMLAdapter;
 import archimate.util.FileHandler;
+import archimate.util.SourcePool;
 import archimate.util.JavaClass;
 import archimate.util.JavaMethod;
 import archimate.util.SourceInspector;
@@ -47,6 +48,12 @@ public abstract class Pattern implements ICodeGenerator {
 	protected MultiStatus status;
 	// UML reader
 	protected UMLAdapter umlReader;
+	// Parsed source files shared with the other patterns of the action
+	protected SourcePool sources;
+	// The UML package the tree was checked out for
+	private org.eclipse.uml2.uml.Package treePackage;
+	// The version of the UML model the tree was built for
+	private int treeVersion;
 
 	protected void addPrimitives(org.eclipse.uml2.uml.Package umlPackage) {
 		for (Profile profile : umlPackage.getAppliedProfiles()) {
@@ -57,6 +64,23 @@ public abstract class Pattern implements ICodeGenerator {
 		}
 	}
 
+	// Takes the tree of the pattern from the TreeCache, when it was built
+	// before for the same model. Returns whether the tree was found, otherwise
+	// it has to be built.
+	protected boolean checkOutTree(org.eclipse.uml2.uml.Package umlPackage) {
+		treePackage = umlPackage;
+		treeVersion = TreeCache.version(umlPackage);
+		tree = TreeCache.checkOut(umlPackage, name);
+		return tree != null;
+	}
+
+	// Returns the tree of the pattern to the TreeCache for the next action
+	protected void checkInTree() {
+		if (treePackage != null && tree != null)
+			TreeCache.checkIn(treePackage, name, tree, treeVersion);
+		treePackage = null;
+	}
+
 	// Returns the name of the pattern
 	public String name() {
 		return name;
@@ -106,6 +130,16 @@ public abstract class Pattern implements ICodeGenerator {
 		return status;
 	}
 
+	// Returns the parsed source files shared with the other patterns
+	public SourcePool sources() {
+		return sources;
+	}
+
+	// Sets the parsed source files shared with the other patterns
+	public void setSources(SourcePool sources) {
+		this.sources = sources;
+	}
+
 	// Estimates the number of tasks to execute
 	public int estimateTasks(String mode) {
 		if (tasks == 0) {
@@ -131,6 +165,7 @@ public abstract class Pattern implements ICodeGenerator {
 		// Traverses the source and adds missing elements
 		SourceInspector inspector = new SourceInspector(this);
 		inspector.updateSource();
+		checkInTree();
 	}
 
 	// Validates the code in the project source folder
@@ -143,6 +178,25 @@ public abstract class Pattern implements ICodeGenerator {
 		// Traverses the source and validates its elements
 		SourceInspector inspector = new SourceInspector(this);
 		inspector.validateSource();
+		checkInTree();
+	}
+
+	// Generates or validates the code of all given patterns in one traversal
+	// of the source, so that every source file is parsed once for all
+	// patterns and the changes to a file are written once
+	public static void traverse(ArrayList<Pattern> patterns, String mode,
+			IProgressMonitor monitor, MultiStatus status, SourcePool sources) {
+		ArrayList<SourceInspector> inspectors = new ArrayList<SourceInspector>();
+		for (Pattern pattern : patterns) {
+			pattern.monitor = monitor;
+			pattern.status = status;
+			pattern.sources = sources;
+			inspectors.add(new SourceInspector(pattern));
+		}
+		SourceInspector.traverse(inspectors, mode, sources, monitor);
+		for (Pattern pattern : patterns) {
+			pattern.checkInTree();
+		}
 	}
 
 	// Updates the currently selected UML model
@@ -155,6 +209,7 @@ public abstract class Pattern implements ICodeGenerator {
 		// Traverses the source and validates its elements
 		SourceInspector inspector = new SourceInspector(this);
 		inspector.updateModel();
+		checkInTree();
 	}
 
 	// Add a number of JavaClass objects with the given settings to the TagNode
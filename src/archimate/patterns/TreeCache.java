@@ -0,0 +1,104 @@
+package archimate.patterns;
+
+import java.util.HashMap;
+
+import archimate.uml.UMLAdapter;
+import archimate.util.TagTree;
+
+/**
+ * This class keeps the {@link TagTree}s built for the packages of a UML model,
+ * so that a following action on an unchanged model does not have to build the
+ * trees again. The trees are attached to the model through the
+ * {@link UMLAdapter} and discarded together with its index as soon as the
+ * model changes. A tree is checked out by one action at a time: while an
+ * action uses the tree, it is not in the cache, so that a following action
+ * builds its own tree.
+ * 
+ * @author Samuel Esposito
+ */
+public class TreeCache {
+
+	// The trees mapped on their package and the name of their pattern
+	private HashMap<org.eclipse.uml2.uml.Package, HashMap<String, TagTree>> packages = new HashMap<org.eclipse.uml2.uml.Package, HashMap<String, TagTree>>();
+
+	/**
+	 * Returns the version of the model of the package. The version is taken
+	 * before a tree is built and passed when the tree is checked in.
+	 * 
+	 * @param umlPackage
+	 *            the UML package to build a tree for
+	 * @return The version of the model
+	 */
+	public static int version(org.eclipse.uml2.uml.Package umlPackage) {
+		return UMLAdapter.modelVersion(umlPackage);
+	}
+
+	/**
+	 * Takes the tree built for the pattern in the package from the cache,
+	 * when the model has not changed since. The state of the last traversal
+	 * of the source code is discarded from the returned tree.
+	 * 
+	 * @param umlPackage
+	 *            the UML package the tree was built for
+	 * @param pattern
+	 *            the name of the pattern
+	 * @return The cached {@link TagTree}, or <code>null</code>
+	 */
+	public static TagTree checkOut(org.eclipse.uml2.uml.Package umlPackage,
+			String pattern) {
+		TagTree tree = getCache(umlPackage).removeTree(umlPackage, pattern);
+		if (tree != null)
+			tree.reset();
+		return tree;
+	}
+
+	/**
+	 * Returns the tree built for the pattern in the package to the cache,
+	 * unless the model changed since the given version
+	 * 
+	 * @param umlPackage
+	 *            the UML package the tree was built for
+	 * @param pattern
+	 *            the name of the pattern
+	 * @param tree
+	 *            the {@link TagTree}
+	 * @param version
+	 *            the version of the model the tree was built for
+	 */
+	public static synchronized void checkIn(
+			org.eclipse.uml2.uml.Package umlPackage, String pattern,
+			TagTree tree, int version) {
+		if (version == version(umlPackage))
+			getCache(umlPackage).putTree(umlPackage, pattern, tree);
+	}
+
+	// Returns the cache attached to the model of the package
+	private static synchronized TreeCache getCache(
+			org.eclipse.uml2.uml.Package umlPackage) {
+		TreeCache cache = (TreeCache) UMLAdapter.attachment(umlPackage,
+				TreeCache.class);
+		if (cache == null) {
+			cache = new TreeCache();
+			UMLAdapter.attach(umlPackage, TreeCache.class, cache);
+		}
+		return cache;
+	}
+
+	// Removes the tree of the pattern in the package from the cache
+	private synchronized TagTree removeTree(
+			org.eclipse.uml2.uml.Package umlPackage, String pattern) {
+		HashMap<String, TagTree> trees = packages.get(umlPackage);
+		return trees == null ? null : trees.remove(pattern);
+	}
+
+	// Stores the tree of the pattern in the package
+	private synchronized void putTree(org.eclipse.uml2.uml.Package umlPackage,
+			String pattern, TagTree tree) {
+		HashMap<String, TagTree> trees = packages.get(umlPackage);
+		if (trees == null) {
+			trees = new HashMap<String, TagTree>();
+			packages.put(umlPackage, trees);
+		}
+		trees.put(pattern, tree);
+	}
+}
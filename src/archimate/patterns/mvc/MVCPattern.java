@@ -73,9 +73,11 @@ public class MVCPattern extends Pattern implements ICodeGenerator {
 		umlReader = new UMLAdapter(umlPackage, "MVC");
 		// Set the pattern name
 		name = "MVC Pattern";
-		// Setup the tag tree
-		constructTree();
-		addPrimitives(umlPackage);
+		// Setup the tag tree, unless it was built before for the same model
+		if (!checkOutTree(umlPackage)) {
+			constructTree();
+			addPrimitives(umlPackage);
+		}
 	}
 
 	// Sets the package names
@@ -202,8 +202,10 @@ public class CallbackPrimitive extends Pattern implements ICodeGenerator {
 		umlReader = new UMLAdapter(umlPackage, "CallBack");
 		// Set the pattern name
 		name = "Callback primitive";
-		// Setup the tag tree
-		constructTree();
+		// Setup the tag tree, unless it was built before for the same model
+		if (!checkOutTree(umlPackage)) {
+			constructTree();
+		}
 	}
 
 	// Sets the package names
@@ -731,7 +733,7 @@ public class CallbackPrimitive extends Pattern implements ICodeGenerator {
 		ArrayList<JavaClass> toRemove = new ArrayList<JavaClass>();
 		for (JavaClass interfaceClass : javaClass.interfaces()) {
 			// Remove interface from restricted interfaces
-			tree.restrictedInterfaces().remove(interfaceClass);
+			tree.removeRestrictedInterface(interfaceClass);
 			// Remove method declarations from restricted methods
 			ArrayList<ICodeElement> methods2Remove = new ArrayList<ICodeElement>();
 			for (JavaMethod method : tree.restrictedMethods()) {
@@ -741,7 +743,7 @@ public class CallbackPrimitive extends Pattern implements ICodeGenerator {
 					}
 				}
 			}
-			tree.restrictedMethods().removeAll(methods2Remove);
+			tree.removeRestrictedMethods(methods2Remove);
 			// Remove the interface node
 			tree.dropNode(tree.getNode(tree.root(), interfaceClass
 					.archiMateTag()));
@@ -764,13 +766,15 @@ public class CallbackPrimitive extends Pattern implements ICodeGenerator {
 								.archiMateTag());
 						ArrayList<TagNode> nodes2Drop = new ArrayList<TagNode>();
 						for (TagNode child : node.children()) {
-							if (child.source().remove(implementation)
+							if (child.removeSource(implementation)
 									&& !child.sourceDefined()) {
 								// Remove the method node
 								nodes2Drop.add(child);
 							}
 						}
-						node.children().removeAll(nodes2Drop);
+						for (TagNode child : nodes2Drop) {
+							node.removeChild(child);
+						}
 					}
 				}
 				javaClass.children().removeAll(methods2Remove);
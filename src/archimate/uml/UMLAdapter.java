@@ -1,10 +1,16 @@
 package archimate.uml;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.uml2.uml.BehaviorExecutionSpecification;
+import org.eclipse.uml2.uml.Element;
 import org.eclipse.uml2.uml.Interaction;
 import org.eclipse.uml2.uml.Lifeline;
 import org.eclipse.uml2.uml.Message;
@@ -52,51 +58,10 @@ public class UMLAdapter {
 	 * @return The found element
 	 */
 	public NamedElement getElement(String stereotypeName) {
-		NamedElement namedElement = null;
-		EList<NamedElement> elements = umlPackage.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-			for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-					.hasNext();) {
-				Stereotype stereotype = ite2.next();
-				if (stereotype.getName().equals(stereotypeName)) {
-					return element;
-				}
-			}
-			if (element instanceof Namespace) {
-				namedElement = traverseSomeElements((Namespace) element,
-						stereotypeName);
-				if (namedElement != null)
-					return namedElement;
-			}
-		}
-		return namedElement;
-	}
-
-	// Recursively traverses the UML tree until a desired element was found
-	private NamedElement traverseSomeElements(Namespace umlElement,
-			String stereotypeName) {
-		NamedElement namedElement = null;
-		EList<NamedElement> elements = umlElement.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-			for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-					.hasNext();) {
-				Stereotype stereotype = ite2.next();
-				if (stereotype.getName().equals(stereotypeName)) {
-					return element;
-				}
-			}
-			if (element instanceof Namespace) {
-				namedElement = traverseSomeElements((Namespace) element,
-						stereotypeName);
-				if (namedElement != null)
-					return namedElement;
-			}
-		}
-		return namedElement;
+		ArrayList<NamedElement> elements = index().get(stereotypeName);
+		if (elements == null)
+			return null;
+		return elements.get(0);
 	}
 
 	/**
@@ -108,47 +73,10 @@ public class UMLAdapter {
 	 * @return The found UML elements
 	 */
 	public ArrayList<NamedElement> getElements(String stereotypeName) {
-		ArrayList<NamedElement> namedElements = new ArrayList<NamedElement>();
-		EList<NamedElement> elements = umlPackage.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-			for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-					.hasNext();) {
-				Stereotype stereotype = ite2.next();
-				if (stereotype.getName().equals(stereotypeName)) {
-					namedElements.add(element);
-				}
-			}
-			if (element instanceof Namespace) {
-				namedElements.addAll(traverseElements((Namespace) element,
-						stereotypeName));
-			}
-		}
-		return namedElements;
-	}
-
-	// Recursively traverses the UML tree until all matching elements are found
-	private ArrayList<NamedElement> traverseElements(Namespace umlElement,
-			String stereotypeName) {
-		ArrayList<NamedElement> namedElements = new ArrayList<NamedElement>();
-		EList<NamedElement> elements = umlElement.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-			for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-					.hasNext();) {
-				Stereotype stereotype = ite2.next();
-				if (stereotype.getName().equals(stereotypeName)) {
-					namedElements.add(element);
-				}
-			}
-			if (element instanceof Namespace) {
-				namedElements.addAll(traverseElements((Namespace) element,
-						stereotypeName));
-			}
-		}
-		return namedElements;
+		ArrayList<NamedElement> elements = index().get(stereotypeName);
+		if (elements == null)
+			return new ArrayList<NamedElement>();
+		return new ArrayList<NamedElement>(elements);
 	}
 
 	/**
@@ -163,19 +91,10 @@ public class UMLAdapter {
 			String stereotypeName) {
 		ArrayList<NamedElement> sent = new ArrayList<NamedElement>();
 		if (umlElement instanceof Lifeline) {
-			Lifeline lifeline = (Lifeline) umlElement;
-			for (NamedElement element : getElements(stereotypeName)) {
-				if (element instanceof Message) {
-					Message message = (Message) element;
-					MessageEnd messageEnd = message.getSendEvent();
-					if (messageEnd instanceof MessageOccurrenceSpecification) {
-						MessageOccurrenceSpecification messOcc = (MessageOccurrenceSpecification) messageEnd;
-						if (messOcc.getCovereds().contains(lifeline)) {
-							sent.add(message);
-						}
-					}
-				}
-			}
+			ArrayList<NamedElement> messages = stereotypeIndex().getMessages(
+					umlPackage, stereotypeName).sent.get(umlElement);
+			if (messages != null)
+				sent.addAll(messages);
 		}
 		return sent;
 	}
@@ -192,19 +111,10 @@ public class UMLAdapter {
 			String stereotypeName) {
 		ArrayList<NamedElement> received = new ArrayList<NamedElement>();
 		if (umlElement instanceof Lifeline) {
-			Lifeline lifeline = (Lifeline) umlElement;
-			for (NamedElement element : getElements(stereotypeName)) {
-				if (element instanceof Message) {
-					Message message = (Message) element;
-					MessageEnd messageEnd = message.getReceiveEvent();
-					if (messageEnd instanceof MessageOccurrenceSpecification) {
-						MessageOccurrenceSpecification messOcc = (MessageOccurrenceSpecification) messageEnd;
-						if (messOcc.getCovereds().contains(lifeline)) {
-							received.add(message);
-						}
-					}
-				}
-			}
+			ArrayList<NamedElement> messages = stereotypeIndex().getMessages(
+					umlPackage, stereotypeName).received.get(umlElement);
+			if (messages != null)
+				received.addAll(messages);
 		}
 		return received;
 	}
@@ -218,70 +128,48 @@ public class UMLAdapter {
 	 * @return The name of the found UML element
 	 */
 	public String getElementName(String stereotypeName) {
-		String name = "";
-		EList<NamedElement> elements = umlPackage.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-			for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-					.hasNext();) {
-				Stereotype stereotype = ite2.next();
-				if (stereotype.getName().equals(stereotypeName)) {
-					name = element.getName();
-					if ((name == null || name.equals(""))
-							&& element instanceof TypedElement) {
-						TypedElement typedElement = (TypedElement) element;
-						Type type = typedElement.getType();
-						if (type.getName() != null) {
-							name = type.getName();
-						}
-					}
-					if (name != null)
-						return name;
-					return "";
-				}
-			}
-			if (element instanceof Namespace) {
-				name = traverseSome((Namespace) element, stereotypeName);
-				if (!name.equals(""))
-					return name;
-			}
+		ArrayList<NamedElement> elements = index().get(stereotypeName);
+		if (elements == null)
+			return "";
+		// a nested element without a name ends the search in its namespace
+		Element skipped = null;
+		for (NamedElement element : elements) {
+			if (skipped != null && isOwnedBy(element, skipped))
+				continue;
+			String name = getName(element);
+			if (!name.equals("") || element.getOwner() == umlPackage)
+				return name;
+			skipped = element.getOwner();
 		}
-		return name;
+		return "";
 	}
 
-	// Recursively traverses the UML tree until a desired element was found
-	private String traverseSome(Namespace umlElement, String stereotypeName) {
-		String name = "";
-		EList<NamedElement> elements = umlElement.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-			for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-					.hasNext();) {
-				Stereotype stereotype = ite2.next();
-				if (stereotype.getName().equals(stereotypeName)) {
-					name = element.getName();
-					if ((name == null || name.equals(""))
-							&& element instanceof TypedElement) {
-						TypedElement typedElement = (TypedElement) element;
-						Type type = typedElement.getType();
-						if (type.getName() != null) {
-							name = type.getName();
-						}
-					}
-					if (name != null)
-						return name;
-					return "";
-				}
-			}
-			if (element instanceof Namespace) {
-				name = traverseSome((Namespace) element, stereotypeName);
-				if (!name.equals(""))
-					return name;
+	// Returns the name of the element, or the name of its type when the
+	// element has no name
+	private String getName(NamedElement element) {
+		String name = element.getName();
+		if ((name == null || name.equals(""))
+				&& element instanceof TypedElement) {
+			TypedElement typedElement = (TypedElement) element;
+			Type type = typedElement.getType();
+			if (type != null && type.getName() != null) {
+				name = type.getName();
 			}
 		}
-		return name;
+		if (name != null)
+			return name;
+		return "";
+	}
+
+	// Returns whether the element is owned by the namespace, directly or
+	// through one of its owners
+	private boolean isOwnedBy(Element element, Element namespace) {
+		for (Element owner = element.getOwner(); owner != null; owner = owner
+				.getOwner()) {
+			if (owner == namespace)
+				return true;
+		}
+		return false;
 	}
 
 	/**
@@ -294,48 +182,234 @@ public class UMLAdapter {
 	 */
 	public ArrayList<String> getElementNames(String stereotypeName) {
 		ArrayList<String> names = new ArrayList<String>();
-		EList<NamedElement> elements = umlPackage.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			if (element.getName() != null) {
-				EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-				for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-						.hasNext();) {
-					Stereotype stereotype = ite2.next();
-					if (stereotype.getName().equals(stereotypeName)) {
-						names.add(element.getName());
+		ArrayList<NamedElement> elements = index().get(stereotypeName);
+		if (elements != null) {
+			for (NamedElement element : elements) {
+				if (element.getName() != null)
+					names.add(element.getName());
+			}
+		}
+		return names;
+	}
+
+	// Returns the elements in the package mapped on the names of their
+	// stereotypes, building the index when the model changed since it was
+	// last built
+	private HashMap<String, ArrayList<NamedElement>> index() {
+		return stereotypeIndex(umlPackage).get(umlPackage);
+	}
+
+	/**
+	 * Returns the version of the model of the package. The version changes
+	 * every time the model changes.
+	 * 
+	 * @param umlPackage
+	 *            the package of the model
+	 * @return The version of the model
+	 */
+	public static int modelVersion(org.eclipse.uml2.uml.Package umlPackage) {
+		return stereotypeIndex(umlPackage).version();
+	}
+
+	/**
+	 * Returns the object another cache attached to the model of the package
+	 * under the given key. The attached objects are discarded together with
+	 * the index of the stereotypes, as soon as the model changes.
+	 * 
+	 * @param umlPackage
+	 *            the package of the model
+	 * @param key
+	 *            the key the object was attached under
+	 * @return The attached object, or <code>null</code>
+	 */
+	public static Object attachment(org.eclipse.uml2.uml.Package umlPackage,
+			Object key) {
+		return stereotypeIndex(umlPackage).attachment(key);
+	}
+
+	/**
+	 * Attaches an object to the model of the package under the given key,
+	 * until the model changes
+	 * 
+	 * @param umlPackage
+	 *            the package of the model
+	 * @param key
+	 *            the key to attach the object under
+	 * @param value
+	 *            the object to attach
+	 */
+	public static void attach(org.eclipse.uml2.uml.Package umlPackage,
+			Object key, Object value) {
+		stereotypeIndex(umlPackage).attach(key, value);
+	}
+
+	// Returns the index attached to the model of the package
+	private static synchronized StereotypeIndex stereotypeIndex(
+			Namespace umlPackage) {
+		Notifier target = umlPackage.eResource() != null ? umlPackage
+				.eResource() : umlPackage;
+		StereotypeIndex index = (StereotypeIndex) EcoreUtil.getExistingAdapter(
+				target, StereotypeIndex.class);
+		if (index == null) {
+			index = new StereotypeIndex();
+			target.eAdapters().add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * The messages with a stereotype, mapped on the lifelines sending and
+	 * receiving them
+	 */
+	private static class Messages {
+		// The sent messages mapped on the lifeline sending them
+		private HashMap<Lifeline, ArrayList<NamedElement>> sent = new HashMap<Lifeline, ArrayList<NamedElement>>();
+		// The received messages mapped on the lifeline receiving them
+		private HashMap<Lifeline, ArrayList<NamedElement>> received = new HashMap<Lifeline, ArrayList<NamedElement>>();
+
+		// Adds the message to the lifelines covered by the message end. Every
+		// message is indexed once per stereotype and a message end covers a
+		// lifeline once, so the lists hold no duplicates.
+		private void add(HashMap<Lifeline, ArrayList<NamedElement>> lifelines,
+				Message message, MessageEnd messageEnd) {
+			if (messageEnd instanceof MessageOccurrenceSpecification) {
+				MessageOccurrenceSpecification messOcc = (MessageOccurrenceSpecification) messageEnd;
+				for (Lifeline lifeline : messOcc.getCovereds()) {
+					ArrayList<NamedElement> messages = lifelines.get(lifeline);
+					if (messages == null) {
+						messages = new ArrayList<NamedElement>();
+						lifelines.put(lifeline, messages);
 					}
+					messages.add(message);
 				}
 			}
-			if (element instanceof Namespace) {
-				names.addAll(traverseAll((Namespace) element, stereotypeName));
-			}
 		}
-		return names;
 	}
 
-	// Recursively traverses the UML tree until all matching elements are found
-	private ArrayList<String> traverseAll(Namespace umlElement,
-			String stereotypeName) {
-		ArrayList<String> names = new ArrayList<String>();
-		EList<NamedElement> elements = umlElement.getOwnedMembers();
-		for (Iterator<NamedElement> iter = elements.iterator(); iter.hasNext();) {
-			NamedElement element = iter.next();
-			if (element.getName() != null) {
-				EList<Stereotype> stereotypes = element.getAppliedStereotypes();
-				for (Iterator<Stereotype> ite2 = stereotypes.iterator(); ite2
-						.hasNext();) {
-					Stereotype stereotype = ite2.next();
-					if (stereotype.getName().equals(stereotypeName)) {
-						names.add(element.getName());
+	/**
+	 * Index of the elements in the packages of a model, mapped on the names of
+	 * their stereotypes, together with the stereotyped messages mapped on
+	 * their lifelines and the objects attached by other caches. The index is
+	 * attached to the model and discarded as soon as the model changes.
+	 */
+	private static class StereotypeIndex extends EContentAdapter {
+		// The indexed packages mapped on their index
+		private HashMap<Namespace, HashMap<String, ArrayList<NamedElement>>> packages = new HashMap<Namespace, HashMap<String, ArrayList<NamedElement>>>();
+		// The indexed messages mapped on their package and stereotype
+		private HashMap<Namespace, HashMap<String, Messages>> messages = new HashMap<Namespace, HashMap<String, Messages>>();
+		// The objects attached by other caches mapped on their key
+		private HashMap<Object, Object> attachments = new HashMap<Object, Object>();
+		// The number of changes of the model
+		private int version;
+
+		// Returns the number of changes of the model
+		private synchronized int version() {
+			return version;
+		}
+
+		// Returns the object attached under the key
+		private synchronized Object attachment(Object key) {
+			return attachments.get(key);
+		}
+
+		// Attaches the object under the key
+		private synchronized void attach(Object key, Object value) {
+			attachments.put(key, value);
+		}
+
+		// Returns the index of the package, building it if needed
+		private synchronized HashMap<String, ArrayList<NamedElement>> get(
+				Namespace umlPackage) {
+			HashMap<String, ArrayList<NamedElement>> elements = packages
+					.get(umlPackage);
+			if (elements == null) {
+				elements = new HashMap<String, ArrayList<NamedElement>>();
+				index(umlPackage, elements);
+				packages.put(umlPackage, elements);
+			}
+			return elements;
+		}
+
+		// Returns the messages in the package with the given stereotype,
+		// mapped on their lifelines, building the index if needed
+		private synchronized Messages getMessages(Namespace umlPackage,
+				String stereotypeName) {
+			HashMap<String, Messages> stereotypes = messages.get(umlPackage);
+			if (stereotypes == null) {
+				stereotypes = new HashMap<String, Messages>();
+				messages.put(umlPackage, stereotypes);
+			}
+			Messages index = stereotypes.get(stereotypeName);
+			if (index == null) {
+				index = new Messages();
+				ArrayList<NamedElement> elements = get(umlPackage).get(
+						stereotypeName);
+				if (elements != null) {
+					for (NamedElement element : elements) {
+						if (element instanceof Message) {
+							Message message = (Message) element;
+							index.add(index.sent, message, message
+									.getSendEvent());
+							index.add(index.received, message, message
+									.getReceiveEvent());
+						}
+					}
+				}
+				stereotypes.put(stereotypeName, index);
+			}
+			return index;
+		}
+
+		// Recursively adds the members of the namespace to the index, in the
+		// order in which the model used to be traversed
+		private void index(Namespace namespace,
+				HashMap<String, ArrayList<NamedElement>> elements) {
+			for (NamedElement element : namespace.getOwnedMembers()) {
+				for (Stereotype stereotype : element.getAppliedStereotypes()) {
+					ArrayList<NamedElement> stereotyped = elements
+							.get(stereotype.getName());
+					if (stereotyped == null) {
+						stereotyped = new ArrayList<NamedElement>();
+						elements.put(stereotype.getName(), stereotyped);
 					}
+					stereotyped.add(element);
+				}
+				if (element instanceof Namespace) {
+					index((Namespace) element, elements);
 				}
 			}
-			if (element instanceof Namespace) {
-				names.addAll(traverseAll((Namespace) element, stereotypeName));
+		}
+
+		/*
+		 * (non-Javadoc) Discards the index and the attached objects when the
+		 * model changes
+		 * 
+		 * @see
+		 * org.eclipse.emf.ecore.util.EContentAdapter#notifyChanged(org.eclipse
+		 * .emf.common.notify.Notification)
+		 */
+		public void notifyChanged(Notification notification) {
+			super.notifyChanged(notification);
+			if (!notification.isTouch()) {
+				synchronized (this) {
+					packages.clear();
+					messages.clear();
+					attachments.clear();
+					++version;
+				}
 			}
 		}
-		return names;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.eclipse.emf.common.notify.impl.AdapterImpl#isAdapterForType(java
+		 * .lang.Object)
+		 */
+		public boolean isAdapterForType(Object type) {
+			return type == StereotypeIndex.class;
+		}
 	}
 
 	private Interaction getInteraction() {
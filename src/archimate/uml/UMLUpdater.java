@@ -8,6 +8,7 @@ import org.eclipse.jdt.core.dom.TypeDeclaration;
 
 import archimate.codegen.JavaHelper;
 import archimate.util.SourceInspector;
+import archimate.util.TagContext;
 import archimate.util.TagNode;
 import archimate.util.TagTree;
 
@@ -24,6 +25,8 @@ public class UMLUpdater extends ASTVisitor {
 
 	// TagTree of the ICodeGenerator at hand
 	private TagTree tree;
+	// The node and source element selected while traversing the file
+	private TagContext context;
 	// The umlReader for manipulating the UML model
 	private UMLAdapter umlReader;
 	// JavaHelper for accessing the source code
@@ -45,6 +48,7 @@ public class UMLUpdater extends ASTVisitor {
 	public UMLUpdater(SourceInspector inspector, String pattern) {
 		super(true);
 		tree = inspector.tree();
+		context = tree.newContext();
 		umlReader = inspector.umlReader();
 		monitor = inspector.monitor();
 		status = inspector.status();
@@ -61,13 +65,13 @@ public class UMLUpdater extends ASTVisitor {
 	 */
 	public boolean visit(TypeDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasChild(tag)) {
 			TagNode self = tree.getNode(current, tag);
 			boolean toggle = self.setVisited();
 			if (toggle)
 				monitor.worked(1);
-			tree.setCurrent(self);
+			context.setCurrent(self);
 		}
 		return true;
 	}
@@ -84,10 +88,10 @@ public class UMLUpdater extends ASTVisitor {
 	 */
 	public void endVisit(TypeDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasParent()
 				&& current.parent().hasChild(tag)) {
-			tree.setCurrent(current.parent());
+			context.setCurrent(current.parent());
 		}
 	}
 
@@ -101,14 +105,14 @@ public class UMLUpdater extends ASTVisitor {
 	 */
 	public boolean visit(MethodDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		helper.findNewMethod(node, current, umlReader);
 		if ((!tag.equals("")) && current.hasChild(tag)) {
 			TagNode self = tree.getNode(current, tag);
 			boolean toggle = self.setVisited();
 			if (toggle)
 				monitor.worked(1);
-			tree.setCurrent(self);
+			context.setCurrent(self);
 		}
 		return false;
 	}
@@ -124,10 +128,10 @@ public class UMLUpdater extends ASTVisitor {
 	 */
 	public void endVisit(MethodDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasParent()
 				&& current.parent().hasChild(tag)) {
-			tree.setCurrent(current.parent());
+			context.setCurrent(current.parent());
 		}
 	}
 }
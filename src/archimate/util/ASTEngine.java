@@ -1,16 +1,30 @@
 package archimate.util;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jface.text.BadLocationException;
@@ -39,6 +53,10 @@ public class ASTEngine {
 	private SourceInspector inspector;
 	// the current pattern
 	private String pattern;
+	// the compilation unit of the target file
+	private ICompilationUnit compilationUnit;
+	// the parsed source of the target file
+	private CompilationUnit unit;
 
 	/**
 	 * Creates new {@link ASTEngine} and sets the {@link SourceInspector}
@@ -86,18 +104,8 @@ public class ASTEngine {
 	 * saves the changes
 	 */
 	public void traverseSource() {
-		FileHandler handler = new FileHandler();
-		ICompilationUnit compilationUnit = JavaCore
-				.createCompilationUnitFrom(targetFile);
-		ASTParser parser = ASTParser.newParser(AST.JLS3);
-		parser.setKind(ASTParser.K_COMPILATION_UNIT);
-		parser.setSource(compilationUnit);
-		// Enable binding resolution when code validation is intended
-		if (mode.equals(SourceInspector.VALIDATE))
-			parser.setResolveBindings(true);
-		CompilationUnit unit = (CompilationUnit) parser.createAST(null);
-		if (mode.equals(SourceInspector.GENERATE))
-			unit.recordModifications();
+		if (unit == null)
+			parse();
 		ASTVisitor visitor = null;
 		// Select the right ASTVisitor
 		if (mode.equals(SourceInspector.RECORD)) {
@@ -111,7 +119,11 @@ public class ASTEngine {
 		}
 		if (visitor != null) {
 			unit.accept(visitor);
-			if (mode.equals(SourceInspector.GENERATE)) {
+			// Shared sources are saved once all patterns have visited them
+			SourcePool sources = inspector.sources();
+			if (mode.equals(SourceInspector.GENERATE)
+					&& (sources == null || !sources.saves(mode))) {
+				FileHandler handler = new FileHandler();
 				String sourceCode = "";
 				Document doc = null;
 				try {
@@ -132,10 +144,236 @@ public class ASTEngine {
 				}
 			}
 		}
+		// Release the parsed source once it has been traversed
+		unit = null;
+	}
+
+	/**
+	 * Parses the source in the file with the settings required by the mode of
+	 * the engine and keeps the result, so that the same
+	 * {@link CompilationUnit} can be recorded and traversed without parsing
+	 * the file a second time
+	 * 
+	 * @return The parsed {@link CompilationUnit}
+	 */
+	public CompilationUnit parse() {
+		if (reuse())
+			return unit;
+		compilationUnit = JavaCore.createCompilationUnitFrom(targetFile);
+		ASTParser parser = newParser(mode);
+		parser.setSource(compilationUnit);
+		unit = (CompilationUnit) parser.createAST(null);
+		if (mode.equals(SourceInspector.GENERATE))
+			unit.recordModifications();
+		share();
+		return unit;
+	}
+
+	// Takes the parsed source from the shared pool when another pattern
+	// parsed the file for the same mode before
+	private boolean reuse() {
+		SourcePool sources = inspector.sources();
+		if (sources == null || sources.unit(targetFile, mode) == null)
+			return false;
+		compilationUnit = sources.source(targetFile, mode);
+		unit = sources.unit(targetFile, mode);
+		return true;
+	}
+
+	// Offers the parsed source to the shared pool
+	private void share() {
+		SourcePool sources = inspector.sources();
+		if (sources != null)
+			sources.put(targetFile, mode, compilationUnit, unit);
+	}
+
+	/**
+	 * Parses the source files of the given engines in one batch and lets the
+	 * engines keep the results. When bindings have to be resolved, the files
+	 * of every project are passed to a single {@link ASTParser#createASTs}
+	 * call, so that the binding environment is built once and shared by the
+	 * files. Otherwise the files are parsed concurrently by a bounded pool of
+	 * workers. Files parsed for the same mode by another pattern of the
+	 * action are taken from the shared {@link SourcePool}. Visiting the parsed
+	 * sources is left to the caller and happens on the calling thread.
+	 * 
+	 * @param engines
+	 *            the engines of the files to parse
+	 * @param mode
+	 *            the mode the files are parsed for
+	 * @param monitor
+	 *            the progress monitor, checked for cancellation
+	 */
+	public static void parse(ArrayList<ASTEngine> engines, String mode,
+			IProgressMonitor monitor) {
+		ArrayList<ASTEngine> unparsed = new ArrayList<ASTEngine>();
+		for (ASTEngine engine : engines) {
+			if (!engine.reuse())
+				unparsed.add(engine);
+		}
+		if (unparsed.isEmpty())
+			return;
+		if (mode.equals(SourceInspector.VALIDATE)) {
+			parseWithBindings(unparsed, monitor);
+			for (ASTEngine engine : unparsed) {
+				engine.share();
+			}
+		} else {
+			parseConcurrently(unparsed, monitor);
+		}
+	}
+
+	// Creates a parser with the settings required by the visitor of the mode.
+	// Only validation needs bindings. Recording and updating the model only
+	// visit declarations, so their method bodies are skipped by setting the
+	// focal position outside of every body, and statements are not recovered.
+	private static ASTParser newParser(String mode) {
+		ASTParser parser = ASTParser.newParser(AST.JLS3);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		// Enable binding resolution when code validation is intended
+		if (mode.equals(SourceInspector.VALIDATE))
+			parser.setResolveBindings(true);
+		if (mode.equals(SourceInspector.RECORD)
+				|| mode.equals(SourceInspector.UPDATE)) {
+			parser.setFocalPosition(0);
+			parser.setStatementsRecovery(false);
+		}
+		return parser;
+	}
+
+	// Parses the files of every project in a single batch sharing one binding
+	// environment. Files without a compilation unit, and the files of a batch
+	// the parser fails on, are left unparsed and parsed on their own when they
+	// are visited.
+	private static void parseWithBindings(ArrayList<ASTEngine> engines,
+			IProgressMonitor monitor) {
+		LinkedHashMap<IJavaProject, HashMap<ICompilationUnit, ASTEngine>> projects = new LinkedHashMap<IJavaProject, HashMap<ICompilationUnit, ASTEngine>>();
+		for (ASTEngine engine : engines) {
+			engine.compilationUnit = JavaCore
+					.createCompilationUnitFrom(engine.targetFile);
+			if (engine.compilationUnit == null)
+				continue;
+			IJavaProject project = engine.compilationUnit.getJavaProject();
+			HashMap<ICompilationUnit, ASTEngine> sources = projects
+					.get(project);
+			if (sources == null) {
+				sources = new HashMap<ICompilationUnit, ASTEngine>();
+				projects.put(project, sources);
+			}
+			sources.put(engine.compilationUnit, engine);
+		}
+		for (IJavaProject project : projects.keySet()) {
+			final HashMap<ICompilationUnit, ASTEngine> sources = projects
+					.get(project);
+			ASTParser parser = newParser(SourceInspector.VALIDATE);
+			parser.setProject(project);
+			try {
+				parser.createASTs(sources.keySet().toArray(
+						new ICompilationUnit[sources.size()]), new String[0],
+						new ASTRequestor() {
+							public void acceptAST(ICompilationUnit source,
+									CompilationUnit ast) {
+								ASTEngine engine = sources.get(source);
+								if (engine != null)
+									engine.unit = ast;
+							}
+						}, new SubProgressMonitor(monitor, 0));
+			} catch (OperationCanceledException e) {
+				// The caller checks the monitor before visiting the files
+				return;
+			} catch (RuntimeException e) {
+				System.out.println("Unable to parse the source files of "
+						+ project.getElementName() + " in one batch.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// Parses the files concurrently using one worker per available processor
+	private static void parseConcurrently(ArrayList<ASTEngine> engines,
+			IProgressMonitor monitor) {
+		int workers = Math.min(Runtime.getRuntime().availableProcessors(),
+				engines.size());
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		ArrayList<Future<CompilationUnit>> results = new ArrayList<Future<CompilationUnit>>();
+		for (final ASTEngine engine : engines) {
+			results.add(pool.submit(new Callable<CompilationUnit>() {
+				public CompilationUnit call() {
+					return engine.parse();
+				}
+			}));
+		}
+		boolean canceled = false;
+		for (Future<CompilationUnit> result : results) {
+			if (canceled || monitor.isCanceled()) {
+				// Workers that did not start yet are not started any more
+				canceled = true;
+				result.cancel(false);
+				continue;
+			}
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				System.out.println("Parsing of the source files was "
+						+ "interrupted.");
+				e.printStackTrace();
+				canceled = true;
+			} catch (ExecutionException e) {
+				// The engine parses its file again when it is visited
+				System.out.println("Unable to parse a source file.");
+				e.printStackTrace();
+			}
+		}
+		pool.shutdown();
+		awaitTermination(pool);
+	}
+
+	// Waits until all workers of the pool have finished. The parser does not
+	// respond to interrupts, so running workers are never abandoned while
+	// they still write to their engine.
+	private static void awaitTermination(ExecutorService pool) {
+		boolean interrupted = false;
+		while (!pool.isTerminated()) {
+			try {
+				pool.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Lets a {@link Recorder} visit the parsed source, recording the
+	 * identifiers of the archiMateTags found in the file. The parsed source is
+	 * kept for the traversal in the mode of the engine, unless the engine only
+	 * records.
+	 * 
+	 * @param tags
+	 *            the list collecting the archiMateTags found in the file
+	 */
+	public void record(ArrayList<TagIndex.Entry> tags) {
+		if (unit == null)
+			parse();
+		unit.accept(new Recorder(inspector, pattern, tags));
+		if (mode.equals(SourceInspector.RECORD))
+			unit = null;
+	}
+
+	/**
+	 * Returns the file the engine reads and writes
+	 * 
+	 * @return The file the engine reads and writes
+	 */
+	public IFile targetFile() {
+		return targetFile;
 	}
 
 	/**
-	 * Creates a new source file for the given archiMateTag
+	 * Creates a new source file for the given archiMateTag. The class and the
+	 * source elements it contains are added to a single {@link CompilationUnit}
+	 * in memory, which is written to the file once.
 	 * 
 	 * @param node
 	 *            The {@link TagNode} to generate code for
@@ -152,10 +390,13 @@ public class ASTEngine {
 				ASTParser parser = ASTParser.newParser(AST.JLS3);
 				parser.setKind(ASTParser.K_COMPILATION_UNIT);
 				parser.setSource("".toCharArray());
-				CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+				unit = (CompilationUnit) parser.createAST(null);
 				unit.recordModifications();
 				JavaHelper helper = new JavaHelper(status, pattern);
 				helper.addClass(unit, javaClass);
+				// Let the inspector tick off the new class and add its
+				// missing members to the same compilation unit
+				unit.accept(new JavaInspector(inspector, pattern));
 				String sourceCode = "";
 				Document doc = new Document("");
 				TextEdit edits = unit.rewrite(doc, null);
@@ -170,7 +411,9 @@ public class ASTEngine {
 					sourceCode += doc.get();
 					targetFile = handler.save(sourceCode, javaClass
 							.packageName(), javaClass.targetFile());
+					handler.selectAndReveal(targetFile);
 				}
+				unit = null;
 				status.add(new Status(IStatus.INFO, status.getPlugin(), 1,
 						pattern
 								+ ": Sourcefile for \""
@@ -179,7 +422,6 @@ public class ASTEngine {
 								+ (javaClass.isInterface() ? "interface"
 										: "class") + " added."
 								+ "                             ", null));
-				traverseSource();
 			}
 		}
 	}
@@ -0,0 +1,65 @@
+package archimate.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class computes the content hashes of the {@link TagNode}s and source
+ * elements. The hash of a node or element is computed from its own content
+ * together with the hashes of its children, so that two subtrees can be
+ * compared by comparing their hashes.
+ * 
+ * @author Samuel Esposito
+ */
+public class ContentHash {
+
+	// The version of the names of the code elements, content hashes computed
+	// for an earlier version are outdated
+	private static volatile int version = 0;
+
+	/**
+	 * Returns the version of the names of the code elements. The content
+	 * hashes are computed for a version, because the hash of a code element
+	 * includes the intended names of the classes it refers to, which change
+	 * when identifiers are recorded in other nodes.
+	 * 
+	 * @return The version of the names of the code elements
+	 */
+	public static int version() {
+		return version;
+	}
+
+	/**
+	 * Starts a new version of the names of the code elements, so that the
+	 * content hashes computed before are computed again
+	 */
+	public static synchronized void namesChanged() {
+		++version;
+	}
+
+	/**
+	 * Returns the MD5 digest of the given content
+	 * 
+	 * @param content
+	 *            the content to hash
+	 * @return The digest of the content, or the content itself when it could
+	 *         not be hashed
+	 */
+	public static String digest(String content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			StringBuilder hash = new StringBuilder();
+			for (byte value : digest.digest(content.getBytes("UTF-8"))) {
+				hash.append(Integer.toHexString((value & 0xff) | 0x100)
+						.substring(1));
+			}
+			return hash.toString();
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+		}
+		return content;
+	}
+}
@@ -1,10 +1,12 @@
 package archimate.util;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -32,12 +34,17 @@ import archimate.Activator;
 public class FileHandler {
 	// The source folder of the java project
 	private String targetFolder;
+	// Whether overwritten files are added to the local history
+	private boolean keepHistory = true;
 
 	/**
 	 * Creates a new {@link FileHandler} and sets the targetFolder
 	 */
 	public FileHandler() {
 		targetFolder = Activator.projectRoot + "/src";
+		if (Activator.getDefault() != null)
+			keepHistory = Activator.getDefault().getPreferenceStore()
+					.getBoolean(Activator.KEEP_HISTORY);
 	}
 
 	/**
@@ -84,7 +91,8 @@ public class FileHandler {
 	}
 
 	/**
-	 * Gets the contents of a file and returns it as a string.
+	 * Gets the contents of a file and returns it as a string. The file is read
+	 * in one go and decoded with the charset of the file.
 	 * 
 	 * @param file
 	 *            The file to be read
@@ -94,35 +102,51 @@ public class FileHandler {
 		InputStream contents = null;
 		try {
 			contents = file.getContents();
+			ByteBuffer buffer = ByteBuffer.allocate(initialSize(file));
+			ReadableByteChannel channel = Channels.newChannel(contents);
+			while (channel.read(buffer) != -1) {
+				if (!buffer.hasRemaining()) {
+					ByteBuffer larger = ByteBuffer
+							.allocate(buffer.capacity() * 2);
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+			}
+			buffer.flip();
+			return Charset.forName(file.getCharset()).decode(buffer)
+					.toString();
 		} catch (CoreException e) {
 			System.out.println("Reading of file failed for file at "
 					+ file.getFullPath() + ".");
 			e.printStackTrace();
-		}
-		BufferedReader reader = new BufferedReader(new InputStreamReader(
-				contents));
-		StringBuilder sb = new StringBuilder();
-
-		String line = null;
-		try {
-			while ((line = reader.readLine()) != null) {
-				sb.append(line + "\n");
-			}
 		} catch (IOException e) {
 			System.out.println("Reading of buffer failed for file at "
 					+ file.getFullPath() + ".");
 			e.printStackTrace();
 		} finally {
-			try {
-				contents.close();
-			} catch (IOException e) {
-				System.out.println("Closing of file failed for file at "
-						+ file.getFullPath() + ".");
-				e.printStackTrace();
+			if (contents != null) {
+				try {
+					contents.close();
+				} catch (IOException e) {
+					System.out.println("Closing of file failed for file at "
+							+ file.getFullPath() + ".");
+					e.printStackTrace();
+				}
 			}
 		}
+		return "";
+	}
 
-		return sb.toString();
+	// Returns the size of the buffer to read the file into, which is the size
+	// of the file when it is stored locally
+	private int initialSize(IFile file) {
+		if (file.getLocation() != null) {
+			long length = file.getLocation().toFile().length();
+			if (length > 0 && length < Integer.MAX_VALUE)
+				return (int) length + 1;
+		}
+		return 8192;
 	}
 
 	/**
@@ -178,17 +202,7 @@ public class FileHandler {
 			e.printStackTrace();
 		}
 
-		InputStream newContents = new ByteArrayInputStream(contents.getBytes());
-		try {
-			if (result.exists()) {
-				result.setContents(newContents, true, true,
-						new NullProgressMonitor());
-			} else {
-				result.create(newContents, true, new NullProgressMonitor());
-			}
-		} catch (CoreException e) {
-			System.out.println("Could not write to targetfile.");
-		}
+		write(contents, result);
 		return result;
 	}
 
@@ -211,18 +225,27 @@ public class FileHandler {
 			e.printStackTrace();
 		}
 
-		InputStream newContents = new ByteArrayInputStream(contents.getBytes());
+		write(contents, result);
+		return result;
+	}
+
+	// Encodes the contents with the charset of the file and writes them to
+	// the file
+	private void write(String contents, IFile file) {
 		try {
-			if (result.exists()) {
-				result.setContents(newContents, true, true,
+			ByteBuffer bytes = Charset.forName(file.getCharset()).encode(
+					contents);
+			InputStream newContents = new ByteArrayInputStream(bytes.array(),
+					bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			if (file.exists()) {
+				file.setContents(newContents, true, keepHistory,
 						new NullProgressMonitor());
 			} else {
-				result.create(newContents, true, new NullProgressMonitor());
+				file.create(newContents, true, new NullProgressMonitor());
 			}
 		} catch (CoreException e) {
 			System.out.println("Could not write to targetfile.");
 		}
-		return result;
 	}
 
 	/**
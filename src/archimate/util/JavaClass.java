@@ -8,11 +8,7 @@ import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.core.dom.IBinding;
-import org.eclipse.jdt.core.dom.IPackageBinding;
-import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.ImportDeclaration;
-import org.eclipse.jdt.core.dom.SimpleType;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.uml2.uml.NamedElement;
 
@@ -148,22 +144,9 @@ public class JavaClass extends CodeElement implements ICodeElement {
 				&& hasSuperClass()
 				&& (!superClass.optional() || !superClass.className().equals(
 						superClass.intendedName()))) {
-			boolean found = false;
-			if (javaClass.getSuperclassType() instanceof SimpleType) {
-				SimpleType simpleType = (SimpleType) javaClass
-						.getSuperclassType();
-				IBinding binding = simpleType.resolveBinding();
-				if (binding instanceof ITypeBinding) {
-					ITypeBinding type = (ITypeBinding) binding;
-					IPackageBinding packageBinding = type.getPackage();
-					if (superClass.intendedName().equals(type.getName())
-							&& superClass.packageName().equals(
-									packageBinding.getName())) {
-						found = true;
-					}
-				}
-			}
-			if (!found) {
+			if (!TypeHierarchy.getDefault().supertypes(javaClass).extendsClass(
+					TypeHierarchy.qualifiedName(superClass.packageName(),
+							superClass.intendedName()))) {
 				status.add(new Status(IStatus.WARNING, status.getPlugin(), 1,
 						pattern + ": The \"" + className
 								+ "\" class doesn't extend the \""
@@ -189,26 +172,9 @@ public class JavaClass extends CodeElement implements ICodeElement {
 		if (hasSuperClass()
 				&& (!superClass.optional() || !superClass.className().equals(
 						superClass.intendedName()))) {
-			boolean found = false;
-			for (Iterator ite2 = javaClass.superInterfaceTypes().iterator(); ite2
-					.hasNext();) {
-				Object object = ite2.next();
-				if (object instanceof SimpleType) {
-					SimpleType simpleType = (SimpleType) object;
-					IBinding binding = simpleType.resolveBinding();
-					if (binding instanceof ITypeBinding) {
-						ITypeBinding type = (ITypeBinding) binding;
-						IPackageBinding packageBinding = type.getPackage();
-						if (superClass.intendedName().equals(type.getName())
-								&& superClass.packageName().equals(
-										packageBinding.getName())) {
-							found = true;
-							break;
-						}
-					}
-				}
-			}
-			if (!found) {
+			if (!TypeHierarchy.getDefault().supertypes(javaClass).extendsInterface(
+					TypeHierarchy.qualifiedName(superClass.packageName(),
+							superClass.intendedName()))) {
 				status.add(new Status(IStatus.WARNING, status.getPlugin(), 1,
 						pattern + ": The \"" + className
 								+ "\" interface doesn't extend the \""
@@ -221,30 +187,14 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	// Checks the implemented interfaces
 	private void checkImplementedInterfaces(TypeDeclaration javaClass,
 			MultiStatus status, String pattern) {
+		TypeHierarchy.Supertypes supertypes = TypeHierarchy.getDefault()
+				.supertypes(javaClass);
 		for (Iterator<JavaClass> iter = interfaces.iterator(); iter.hasNext();) {
 			JavaClass interfaceType = iter.next();
 			if (!interfaceType.optional()) {
-				boolean found = false;
-				for (Iterator ite2 = javaClass.superInterfaceTypes().iterator(); ite2
-						.hasNext();) {
-					Object object = ite2.next();
-					if (object instanceof SimpleType) {
-						SimpleType simpleType = (SimpleType) object;
-						IBinding binding = simpleType.resolveBinding();
-						if (binding instanceof ITypeBinding) {
-							ITypeBinding type = (ITypeBinding) binding;
-							IPackageBinding packageBinding = type.getPackage();
-							if (interfaceType.intendedName().equals(
-									type.getName())
-									&& interfaceType.packageName().equals(
-											packageBinding.getName())) {
-								found = true;
-								break;
-							}
-						}
-					}
-				}
-				if (!found) {
+				if (!supertypes.extendsInterface(TypeHierarchy.qualifiedName(
+						interfaceType.packageName(), interfaceType
+								.intendedName()))) {
 					status.add(new Status(IStatus.WARNING, status.getPlugin(),
 							1, pattern + ": The \"" + className
 									+ "\" class doesn't implement the \""
@@ -311,6 +261,14 @@ public class JavaClass extends CodeElement implements ICodeElement {
 		}
 	}
 
+	/**
+	 * Marks the class as unvisited and discards the recorded identifiers
+	 */
+	public void reset() {
+		super.reset();
+		recordeds.clear();
+	}
+
 	/**
 	 * Returns the file in which the class is implemented
 	 * 
@@ -328,6 +286,8 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void setPackage(String packageName) {
 		this.packageName = packageName;
+		// The classes referring to this class change as well
+		ContentHash.namesChanged();
 	}
 
 	/**
@@ -358,8 +318,10 @@ public class JavaClass extends CodeElement implements ICodeElement {
 		// return if import is in same package
 		if (samePackage(importName, packageName))
 			return;
-		if (!imports.contains(importName))
+		if (!imports.contains(importName)) {
 			imports.add(importName);
+			contentChanged();
+		}
 	}
 
 	// takes the package from the import
@@ -415,6 +377,7 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void setAuthor(String author) {
 		this.author = author;
+		contentChanged();
 	}
 
 	/**
@@ -443,6 +406,7 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void addArchiMateTag(String archiMateTag) {
 		archiMateTags.add(archiMateTag);
+		contentChanged();
 	}
 
 	/**
@@ -453,6 +417,7 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void addArchiMateTags(ArrayList<String> archiMateTags) {
 		this.archiMateTags.addAll(archiMateTags);
+		contentChanged();
 	}
 
 	/*
@@ -492,6 +457,8 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void setClass(String className) {
 		this.className = className;
+		// The classes referring to this class change as well
+		ContentHash.namesChanged();
 	}
 
 	/**
@@ -531,6 +498,19 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void setAbstract(boolean value) {
 		isAbstract = value;
+		contentChanged();
+	}
+
+	/**
+	 * Marks the class as optional. The intended name of an optional class is
+	 * its recorded identifier, so the classes referring to it change as well.
+	 * 
+	 * @param value
+	 *            whether the class is optional
+	 */
+	public void setOptional(boolean value) {
+		super.setOptional(value);
+		ContentHash.namesChanged();
 	}
 
 	/**
@@ -550,6 +530,7 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void setSuperClass(JavaClass superClass) {
 		this.superClass = superClass;
+		contentChanged();
 	}
 
 	/**
@@ -579,6 +560,7 @@ public class JavaClass extends CodeElement implements ICodeElement {
 	 */
 	public void setType(String type) {
 		this.type = type;
+		contentChanged();
 	}
 
 	/**
@@ -604,8 +586,10 @@ public class JavaClass extends CodeElement implements ICodeElement {
 				break;
 			}
 		}
-		if (!found)
+		if (!found) {
 			interfaces.add(newInterface);
+			contentChanged();
+		}
 	}
 
 	/**
@@ -651,6 +635,25 @@ public class JavaClass extends CodeElement implements ICodeElement {
 		return names;
 	}
 
+	// Appends the specification of the class to the content to hash
+	protected void appendContent(StringBuilder content) {
+		content.append(type).append(' ').append(packageName).append('.')
+				.append(className).append(" -> ").append(intendedName())
+				.append(isAbstract ? " abstract" : "").append('\n');
+		if (superClass != null)
+			content.append("extends ").append(superClass.packageName())
+					.append('.').append(superClass.intendedName()).append('\n');
+		for (JavaClass interfaceClass : interfaces) {
+			content.append("implements ").append(
+					interfaceClass.packageName()).append('.').append(
+					interfaceClass.intendedName()).append('\n');
+		}
+		for (String importName : imports) {
+			content.append("import ").append(importName).append('\n');
+		}
+		content.append(archiMateTags).append('\n').append(author).append('\n');
+	}
+
 	// Returns the specifications for debug purposes
 	public String toString() {
 		String out = "";
@@ -259,6 +259,7 @@ public class JavaMethod extends CodeElement implements ICodeElement {
 	 */
 	public void setName(String name) {
 		this.name = name;
+		contentChanged();
 	}
 
 	/**
@@ -269,6 +270,7 @@ public class JavaMethod extends CodeElement implements ICodeElement {
 	 */
 	public void addArgument(JavaClass javaClass) {
 		args.add(javaClass);
+		contentChanged();
 	}
 
 	/**
@@ -280,7 +282,7 @@ public class JavaMethod extends CodeElement implements ICodeElement {
 	 */
 	public void addArguments(ArrayList<JavaClass> arguments) {
 		args.addAll(arguments);
-
+		contentChanged();
 	}
 
 	/**
@@ -292,6 +294,7 @@ public class JavaMethod extends CodeElement implements ICodeElement {
 	 */
 	public void setType(String type) {
 		this.type = type;
+		contentChanged();
 	}
 
 	/**
@@ -302,6 +305,7 @@ public class JavaMethod extends CodeElement implements ICodeElement {
 	 */
 	public void setArchiMateTag(String tag) {
 		archiMateTag = tag;
+		contentChanged();
 	}
 
 	/**
@@ -403,6 +407,18 @@ public class JavaMethod extends CodeElement implements ICodeElement {
 		return objectType;
 	}
 
+	// Appends the specification of the method to the content to hash
+	protected void appendContent(StringBuilder content) {
+		content.append(type).append(' ').append(archiMateTag).append(' ')
+				.append(objectType.packageName()).append('.').append(
+						objectType.intendedName()).append('#').append(name)
+				.append('\n');
+		for (JavaClass argument : args) {
+			content.append(argument.packageName()).append('.').append(
+					argument.intendedName()).append('\n');
+		}
+	}
+
 	// Returns the specifications for debug purposes
 	public String toString() {
 		String out = "";
@@ -1,5 +1,7 @@
 package archimate.util;
 
+import java.util.ArrayList;
+
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 
@@ -15,10 +17,12 @@ import archimate.codegen.JavaHelper;
  */
 public class Recorder extends ASTVisitor {
 
-	// TagTree of the ICodeGenerator at hand
-	private TagTree tree;
+	// SourceInspector recording the identifiers
+	private SourceInspector inspector;
 	// JavaHelper for accessing the source code
 	private JavaHelper helper;
+	// The archiMateTags found in the source
+	private ArrayList<TagIndex.Entry> tags;
 
 	/**
 	 * Creates a new {@link Recorder}, sets the {@link TagTree} and initializes
@@ -30,8 +34,25 @@ public class Recorder extends ASTVisitor {
 	 *            the pattern currently processed
 	 */
 	public Recorder(SourceInspector inspector, String pattern) {
+		this(inspector, pattern, new ArrayList<TagIndex.Entry>());
+	}
+
+	/**
+	 * Creates a new {@link Recorder} that also collects every archiMateTag it
+	 * encounters in the given list
+	 * 
+	 * @param inspector
+	 *            The given {@link SourceInspector}
+	 * @param pattern
+	 *            the pattern currently processed
+	 * @param tags
+	 *            the list collecting the encountered archiMateTags
+	 */
+	public Recorder(SourceInspector inspector, String pattern,
+			ArrayList<TagIndex.Entry> tags) {
 		super(true);
-		this.tree = inspector.tree();
+		this.inspector = inspector;
+		this.tags = tags;
 		helper = new JavaHelper(inspector.status(), pattern);
 	}
 
@@ -45,13 +66,12 @@ public class Recorder extends ASTVisitor {
 	 */
 	public boolean visit(TypeDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
-		if ((!tag.equals("")) && current.hasChild(tag)) {
-			TagNode self = tree.getNode(current, tag);
+		if (!tag.equals("")) {
 			String name = helper.getName(node);
 			String packageName = helper.getPackage(node);
+			tags.add(new TagIndex.Entry(tag, name, packageName));
 			// Record the identifier for the encountered archiMateTag
-			self.recordIdentifier(name, packageName, tag);
+			inspector.recordIdentifier(tag, name, packageName);
 		}
 		return false;
 	}
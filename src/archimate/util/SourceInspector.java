@@ -1,7 +1,11 @@
 package archimate.util;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -13,10 +17,13 @@ import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 
+import archimate.codegen.GenerationCache;
 import archimate.codegen.ICodeElement;
 import archimate.codegen.ICodeGenerator;
 import archimate.codegen.JavaHelper;
 import archimate.uml.UMLAdapter;
+import archimate.validation.RestrictionSearch;
+import archimate.validation.ValidationCache;
 
 /**
  * This class analyses the source code in the project source folder using the
@@ -32,6 +39,8 @@ public class SourceInspector {
 	public static final String GENERATE = "generate";
 	public static final String VALIDATE = "validate";
 	public static final String UPDATE = "update";
+	// Number of source files parsed and traversed together
+	private static final int BATCH_SIZE = 100;
 	// Mode of the sourceInspector
 	private String mode;
 	// TagTree of the ICodeGenerator at hand
@@ -48,6 +57,21 @@ public class SourceInspector {
 	private MultiStatus status;
 	// Current pattern
 	private String pattern;
+	// Result of the file currently validated
+	private ValidationCache.FileResult result;
+	// State of the last code generation of the pattern
+	private GenerationCache generation;
+	// Hashes of the traversed source files mapped on the files
+	private HashMap<IFile, String> hashes = new HashMap<IFile, String>();
+	// Parsed source files shared with the other patterns of the action
+	private SourcePool sources;
+	// The files to traverse in the current mode
+	private HashSet<IFile> sourceFiles = new HashSet<IFile>();
+	// The files to visit, or null when all traversed files are visited, the
+	// others are replayed from the caches
+	private HashSet<IFile> selected;
+	// Results of the validations of the pattern
+	private ValidationCache cache;
 
 	/**
 	 * Creates a new {@link SourceInspector} and sets its {@link TagTree},
@@ -63,6 +87,7 @@ public class SourceInspector {
 		status = generator.status();
 		pattern = generator.name();
 		umlReader = generator.umlReader();
+		sources = generator.sources();
 	}
 
 	/**
@@ -101,41 +126,74 @@ public class SourceInspector {
 		return status;
 	}
 
+	/**
+	 * Returns the parsed source files shared with the other patterns
+	 * 
+	 * @return The shared {@link SourcePool}, or <code>null</code>
+	 */
+	public SourcePool sources() {
+		return sources;
+	}
+
 	/**
 	 * Traverses the source and adds missing source elements and files
 	 */
 	public void updateSource() {
-		// Set the mode to recording
-		mode = RECORD;
-		// Traverse the source and record the architectures structure
-		inspect();
-		// Set the mode to code generation
-		mode = GENERATE;
-		// Traverse the source and calls back when key source elements are
-		// missing
-		inspect();
-		// System.out.println(tree);
-		// Add the source files that are missing
-		ArrayList<TagNode> tags = tree.getUnvisited();
-		createSourceFiles(tags);
+		ArrayList<SourceInspector> inspectors = new ArrayList<SourceInspector>();
+		inspectors.add(this);
+		traverse(inspectors, GENERATE, sources, monitor);
 	}
 
 	/**
 	 * Traverses the source and validates the source elements
 	 */
 	public void validateSource() {
-		// Set the mode to recording
-		mode = RECORD;
-		// Traverse the source and record the architectures structure
-		inspect();
-		// Set the mode to validation
-		mode = VALIDATE;
-		// Traverses the
-		inspect();
-		// System.out.println(tree);
-		// Report the source files that are missing
-		ArrayList<TagNode> tags = tree.getAllUnvisited();
-		reportMissing(tags);
+		ArrayList<SourceInspector> inspectors = new ArrayList<SourceInspector>();
+		inspectors.add(this);
+		traverse(inspectors, VALIDATE, sources, monitor);
+	}
+
+	/**
+	 * Traverses the source of several patterns in the given mode, so that
+	 * every source file is parsed once for all of them. The architectures
+	 * structures of all patterns are recorded first. The source files are then
+	 * parsed and traversed in batches of a bounded number of files. Every
+	 * batch is traversed for all patterns before the changes made to its
+	 * files are written and the parsed files are released from the pool.
+	 * 
+	 * @param inspectors
+	 *            the inspectors of the patterns
+	 * @param mode
+	 *            either {@link #GENERATE} or {@link #VALIDATE}
+	 * @param sources
+	 *            the pool the inspectors share the parsed files in, or
+	 *            <code>null</code>
+	 * @param monitor
+	 *            the progress monitor
+	 */
+	public static void traverse(ArrayList<SourceInspector> inspectors,
+			String mode, SourcePool sources, IProgressMonitor monitor) {
+		LinkedHashSet<IFile> files = new LinkedHashSet<IFile>();
+		for (SourceInspector inspector : inspectors) {
+			if (monitor.isCanceled()) { // return if cancel is requested
+				return;
+			}
+			files.addAll(inspector.record(mode));
+		}
+		ArrayList<IFile> order = new ArrayList<IFile>(files);
+		for (int start = 0; start < order.size()
+				&& !monitor.isCanceled(); start += BATCH_SIZE) {
+			List<IFile> batch = order.subList(start, Math.min(start
+					+ BATCH_SIZE, order.size()));
+			for (SourceInspector inspector : inspectors) {
+				inspector.inspect(batch);
+			}
+			if (sources != null)
+				sources.save();
+		}
+		for (SourceInspector inspector : inspectors) {
+			inspector.complete();
+		}
 	}
 
 	/**
@@ -152,6 +210,220 @@ public class SourceInspector {
 	// Traverses the source and calls back when key source elements are
 	// missing
 	private void inspect() {
+		traverseSourceFiles(members());
+	}
+
+	// Records the architectures structure from all source files and returns
+	// the files to traverse in the given mode
+	private ArrayList<IFile> record(String mode) {
+		this.mode = mode;
+		sourceFiles.clear();
+		selected = null;
+		cache = null;
+		ArrayList<IFile> traversed = new ArrayList<IFile>();
+		ArrayList<IFile> files = new ArrayList<IFile>();
+		collectSourceFiles(members(), files);
+		TagIndex index = TagIndex.getDefault();
+		// The files not to traverse and the files recorded from their source
+		HashSet<IFile> skipped = new HashSet<IFile>();
+		HashSet<IFile> recorded = new HashSet<IFile>();
+		// The engines of the files changed since they were indexed
+		ArrayList<ASTEngine> unindexed = new ArrayList<ASTEngine>();
+		// The files without archiMateTags, validated for the restrictions
+		ArrayList<IFile> untagged = new ArrayList<IFile>();
+		hashes.clear();
+		for (IFile file : files) {
+			if (monitor.isCanceled()) { // return if cancel is requested
+				return traversed;
+			}
+			TagIndex.Scan scan = index.scan(file);
+			String hash = scan.hash();
+			hashes.put(file, hash);
+			if (index.isCurrent(file, hash)) {
+				ArrayList<TagIndex.Entry> tags = index.tags(file);
+				for (TagIndex.Entry entry : tags) {
+					recordIdentifier(entry.tag(), entry.name(), entry
+							.packageName());
+				}
+				monitor.worked(1);
+				if (tags.isEmpty() && mode.equals(VALIDATE)) {
+					untagged.add(file);
+				} else if (tags.isEmpty()) {
+					skipped.add(file);
+					monitor.worked(1);
+				}
+			} else if (!scan.containsTag()) {
+				// Files without the marker hold no archiMateTags to record
+				index.update(file, hash, new ArrayList<TagIndex.Entry>());
+				monitor.worked(1);
+				if (mode.equals(VALIDATE)) {
+					untagged.add(file);
+				} else {
+					skipped.add(file);
+					monitor.worked(1);
+				}
+			} else {
+				ASTEngine engine = new ASTEngine(file, this, RECORD, pattern);
+				unindexed.add(engine);
+			}
+		}
+		// Parse the other changed files in one batch and record them
+		ASTEngine.parse(unindexed, RECORD, monitor);
+		for (ASTEngine engine : unindexed) {
+			if (monitor.isCanceled()) { // return if cancel is requested
+				return traversed;
+			}
+			ArrayList<TagIndex.Entry> tags = new ArrayList<TagIndex.Entry>();
+			engine.record(tags);
+			index.update(engine.targetFile(), hashes.get(engine.targetFile()),
+					tags);
+			monitor.worked(1);
+			recorded.add(engine.targetFile());
+			if (tags.isEmpty() && mode.equals(VALIDATE)) {
+				untagged.add(engine.targetFile());
+			} else if (tags.isEmpty()) {
+				skipped.add(engine.targetFile());
+				monitor.worked(1);
+			}
+		}
+		unindexed.clear();
+		index.save();
+		// Only validate the files without archiMateTags that may use a
+		// restricted method or interface
+		if (!untagged.isEmpty()) {
+			HashSet<IFile> found = new RestrictionSearch(tree)
+					.search(untagged);
+			for (IFile file : untagged) {
+				if (found != null && !found.contains(file)) {
+					skipped.add(file);
+					monitor.worked(1);
+				}
+			}
+		}
+		// Select the files to validate again, the skipped files are valid
+		if (mode.equals(VALIDATE)) {
+			cache = ValidationCache.getCache(pattern, packageBase);
+			selected = cache.select(tree, hashes);
+			selected.addAll(recorded);
+			for (IFile file : skipped) {
+				cache.put(file, hashes.get(file), tree,
+						new ValidationCache.FileResult());
+			}
+		}
+		for (IFile file : files) {
+			if (!skipped.contains(file))
+				traversed.add(file);
+			else
+				hashes.remove(file);
+		}
+		// Select the files to generate source in again
+		if (mode.equals(GENERATE)) {
+			generation = GenerationCache.getCache(pattern, packageBase);
+			selected = generation.select(tree, hashes);
+		}
+		sourceFiles.addAll(traversed);
+		return traversed;
+	}
+
+	// Parses the files of the batch the pattern visits together and
+	// traverses them, the results of the other files of the pattern are
+	// replayed from the caches. Every engine is dropped once its file has
+	// been traversed.
+	private void inspect(List<IFile> batch) {
+		HashMap<IFile, ASTEngine> engines = new HashMap<IFile, ASTEngine>();
+		for (IFile file : batch) {
+			if (sourceFiles.contains(file)
+					&& (selected == null || selected.contains(file)))
+				engines.put(file, new ASTEngine(file, this, mode, pattern));
+		}
+		ASTEngine.parse(new ArrayList<ASTEngine>(engines.values()), mode,
+				monitor);
+		for (IFile file : batch) {
+			if (monitor.isCanceled()) { // return if cancel is requested
+				return;
+			}
+			if (!sourceFiles.contains(file))
+				continue;
+			if (selected != null && !selected.contains(file)) {
+				if (cache != null)
+					cache.replay(file, tree, status, monitor);
+				else
+					generation.replay(file, tree, monitor);
+			} else {
+				inspect(engines.remove(file));
+			}
+			monitor.worked(1);
+		}
+	}
+
+	// Completes the traversal: adds the missing source files when generating
+	// and reports them when validating, and keeps the state of the traversal
+	// for the next one
+	private void complete() {
+		if (mode.equals(GENERATE)) {
+			createSourceFiles(tree.getUnvisited(tree.root()));
+			if (generation != null && !monitor.isCanceled())
+				generation.update(hashes);
+		} else {
+			if (cache != null && !monitor.isCanceled())
+				cache.save();
+			reportMissing(tree.getAllUnvisited());
+		}
+	}
+
+	// Traverses the parsed file. When validating, the result of the
+	// traversal is kept in the cache.
+	private void inspect(ASTEngine engine) {
+		astEngine = engine;
+		if (cache == null) {
+			astEngine.traverseSource();
+			return;
+		}
+		MultiStatus actionStatus = status;
+		status = new MultiStatus(actionStatus.getPlugin(), actionStatus
+				.getCode(), actionStatus.getMessage(), null);
+		result = new ValidationCache.FileResult();
+		astEngine.traverseSource();
+		result.addStatuses(status);
+		cache.put(engine.targetFile(), hashes.get(engine.targetFile()), tree,
+				result);
+		actionStatus.addAll(status);
+		status = actionStatus;
+		result = null;
+		astEngine = null;
+	}
+
+	/**
+	 * Returns the result of the file currently validated, when it is kept for
+	 * incremental validation
+	 * 
+	 * @return The result of the file currently validated, or <code>null</code>
+	 */
+	public ValidationCache.FileResult validationResult() {
+		return result;
+	}
+
+	/**
+	 * Records the identifier of a type declaration tagged with the given
+	 * archiMateTag, when the tag is defined in the {@link TagTree}
+	 * 
+	 * @param tag
+	 *            the archiMateTag of the type declaration
+	 * @param name
+	 *            the identifier of the type declaration
+	 * @param packageName
+	 *            the package of the type declaration
+	 */
+	public void recordIdentifier(String tag, String name, String packageName) {
+		TagNode root = tree.root();
+		if (root.hasChild(tag)) {
+			TagNode self = tree.getNode(root, tag);
+			self.recordIdentifier(name, packageName, tag);
+		}
+	}
+
+	// Returns the members of the container for the package base
+	private IResource[] members() {
 		FileHandler handler = new FileHandler();
 		IContainer container = handler.findOrCreateContainer(packageBase);
 		IResource[] members = null;
@@ -162,12 +434,42 @@ public class SourceInspector {
 					+ container.getFullPath() + ".");
 			e.printStackTrace();
 		}
-		traverseSourceFiles(members);
+		return members;
+	}
+
+	// Recursively collects all source files in the project source folder
+	private void collectSourceFiles(IResource[] members, ArrayList<IFile> files) {
+		for (int index = 0; index < members.length; index++) {
+			IResource resource = members[index];
+			if (resource instanceof IContainer) {
+				IContainer container = (IContainer) resource;
+				IResource[] newMembers = null;
+				try {
+					newMembers = container.members();
+				} catch (CoreException e) {
+					System.out.println("Could not access members "
+							+ "of the container " + container.getFullPath()
+							+ ".");
+					e.printStackTrace();
+				}
+				collectSourceFiles(newMembers, files);
+			}
+			if (resource instanceof IFile) {
+				files.add((IFile) resource);
+			}
+		}
 	}
 
-	// Recursively traverses all source files in the project source folder and
-	// adds source elements when they are missing
+	// Traverses all source files in the project source folder and adds source
+	// elements when they are missing
 	private void traverseSourceFiles(IResource[] members) {
+		traverseSourceFiles(members, TagIndex.getDefault());
+	}
+
+	// Recursively traverses the source files. Files without archiMateTags are
+	// only traversed when validating, for the restricted interfaces and
+	// methods they may use.
+	private void traverseSourceFiles(IResource[] members, TagIndex tagIndex) {
 		for (int index = 0; index < members.length; index++) {
 			if (monitor.isCanceled()) { // return if cancel is requested
 				return;
@@ -184,18 +486,22 @@ public class SourceInspector {
 							+ ".");
 					e.printStackTrace();
 				}
-				traverseSourceFiles(newMembers);
+				traverseSourceFiles(newMembers, tagIndex);
 			}
 			if (resource instanceof IFile) {
-				astEngine = new ASTEngine((IFile) resource, this, mode, pattern);
-				astEngine.traverseSource();
+				if (mode.equals(VALIDATE)
+						|| tagIndex.scan((IFile) resource).containsTag()) {
+					astEngine = new ASTEngine((IFile) resource, this, mode,
+							pattern);
+					astEngine.traverseSource();
+				}
 				monitor.worked(1);
 			}
 		}
 	}
 
 	// Adds the source files that are missing
-	private void createSourceFiles(ArrayList<TagNode> tags) {
+	private void createSourceFiles(Iterable<TagNode> tags) {
 		for (Iterator<TagNode> iter = tags.iterator(); iter.hasNext();) {
 			if (monitor.isCanceled()) { // return if cancel is requested
 				return;
@@ -207,7 +513,7 @@ public class SourceInspector {
 	}
 
 	/**
-	 * Creates source elements in the node for every tag in the list.
+	 * Creates source elements in the node for every given tag.
 	 * 
 	 * @param node
 	 *            the node to add the source elements to
@@ -215,7 +521,7 @@ public class SourceInspector {
 	 *            the tags to create source for
 	 */
 	public void addSourceElements(TypeDeclaration node, ICodeElement code,
-			ArrayList<TagNode> tags) {
+			Iterable<TagNode> tags) {
 		JavaHelper helper = new JavaHelper(status, pattern);
 		for (Iterator<TagNode> iter = tags.iterator(); iter.hasNext();) {
 			if (monitor.isCanceled()) { // return if cancel is requested
@@ -233,7 +539,7 @@ public class SourceInspector {
 	 * @param tags
 	 *            The tags to report missing source elements for
 	 */
-	public void reportMissing(ArrayList<TagNode> tags) {
+	public void reportMissing(Iterable<TagNode> tags) {
 		for (Iterator<TagNode> iter = tags.iterator(); iter.hasNext();) {
 			TagNode node = iter.next();
 			for (Iterator<ICodeElement> ite2 = node.source().iterator(); ite2
@@ -0,0 +1,154 @@
+package archimate.util;
+
+import java.util.LinkedHashMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * This class keeps the source files of the batch an action is traversing, so
+ * that the patterns processed by the action share a single parse of every
+ * file. When generating code, the changes of all patterns are recorded on the
+ * same {@link CompilationUnit} and every changed file is written once, after
+ * the last pattern has visited the batch. The pool is saved after every
+ * batch, so it never holds more parsed files than one batch.
+ * 
+ * @author Samuel Esposito
+ */
+public class SourcePool {
+
+	// The mode the files are parsed for
+	private String mode;
+	// The parsed files mapped on the file they were parsed from
+	private LinkedHashMap<IFile, Entry> entries = new LinkedHashMap<IFile, Entry>();
+
+	// A parsed file
+	private static class Entry {
+		// The compilation unit of the file
+		private ICompilationUnit source;
+		// The parsed source of the file
+		private CompilationUnit unit;
+	}
+
+	/**
+	 * Creates a new {@link SourcePool} for the given mode
+	 * 
+	 * @param mode
+	 *            the mode the files are parsed for, one of the modes of the
+	 *            {@link SourceInspector}
+	 */
+	public SourcePool(String mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns the parsed source of the file, when the file was parsed for the
+	 * given mode before
+	 * 
+	 * @param file
+	 *            the parsed file
+	 * @param mode
+	 *            the mode the file has to be parsed for
+	 * @return The parsed source, or <code>null</code>
+	 */
+	public synchronized CompilationUnit unit(IFile file, String mode) {
+		Entry entry = entries.get(file);
+		if (entry == null || !this.mode.equals(mode))
+			return null;
+		return entry.unit;
+	}
+
+	/**
+	 * Returns the compilation unit of the file, when the file was parsed for
+	 * the given mode before
+	 * 
+	 * @param file
+	 *            the parsed file
+	 * @param mode
+	 *            the mode the file has to be parsed for
+	 * @return The compilation unit, or <code>null</code>
+	 */
+	public synchronized ICompilationUnit source(IFile file, String mode) {
+		Entry entry = entries.get(file);
+		if (entry == null || !this.mode.equals(mode))
+			return null;
+		return entry.source;
+	}
+
+	/**
+	 * Adds a file parsed for the given mode to the pool. Files parsed for
+	 * another mode than the mode of the pool are not kept.
+	 * 
+	 * @param file
+	 *            the parsed file
+	 * @param mode
+	 *            the mode the file was parsed for
+	 * @param source
+	 *            the compilation unit of the file
+	 * @param unit
+	 *            the parsed source of the file
+	 */
+	public synchronized void put(IFile file, String mode,
+			ICompilationUnit source, CompilationUnit unit) {
+		if (!this.mode.equals(mode) || unit == null)
+			return;
+		Entry entry = new Entry();
+		entry.source = source;
+		entry.unit = unit;
+		entries.put(file, entry);
+	}
+
+	/**
+	 * Returns whether the changes made to the parsed files are saved by the
+	 * pool
+	 * 
+	 * @param mode
+	 *            the mode of the changes
+	 * @return Whether the pool saves the changes
+	 */
+	public boolean saves(String mode) {
+		return this.mode.equals(mode)
+				&& mode.equals(SourceInspector.GENERATE);
+	}
+
+	/**
+	 * Writes the changes recorded on the parsed files, once for every changed
+	 * file, and releases the parsed files
+	 */
+	public synchronized void save() {
+		if (mode.equals(SourceInspector.GENERATE)) {
+			FileHandler handler = new FileHandler();
+			for (IFile file : entries.keySet()) {
+				Entry entry = entries.get(file);
+				try {
+					Document doc = new Document(entry.source.getSource());
+					TextEdit edits = entry.unit.rewrite(doc, null);
+					if (edits.hasChildren()) {
+						edits.apply(doc);
+						handler.save(doc.get(), file);
+						handler.selectAndReveal(file);
+					}
+				} catch (BadLocationException e) {
+					System.out.println("Unable to apply changes to source.");
+					e.printStackTrace();
+				} catch (JavaModelException e) {
+					System.out.println("Unable to apply changes to source.");
+					e.printStackTrace();
+				}
+			}
+		}
+		entries.clear();
+	}
+
+	/**
+	 * Releases the parsed files without saving them
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+}
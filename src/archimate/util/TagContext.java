@@ -0,0 +1,89 @@
+package archimate.util;
+
+import archimate.codegen.ICodeElement;
+
+/**
+ * This class implements the state of a single traversal of a source file
+ * against a {@link TagTree}. The context holds the node and the source element
+ * currently selected, so that the {@link TagTree} itself is not changed while
+ * it is traversed and several files can be traversed against the same tree at
+ * the same time.
+ * 
+ * @author Samuel Esposito
+ */
+public class TagContext {
+
+	// the traversed tree
+	private TagTree tree;
+	// currently selected node
+	private TagNode current;
+	// currently selected code
+	private ICodeElement currentCode;
+
+	/**
+	 * Creates a new context for traversing the given tree, with the root of
+	 * the tree selected
+	 * 
+	 * @param tree
+	 *            the traversed {@link TagTree}
+	 */
+	public TagContext(TagTree tree) {
+		this.tree = tree;
+		current = tree.root();
+	}
+
+	/**
+	 * Returns the traversed tree
+	 * 
+	 * @return The traversed {@link TagTree}
+	 */
+	public TagTree tree() {
+		return tree;
+	}
+
+	/**
+	 * Marks a node as selected
+	 * 
+	 * @param node
+	 *            the node you want to select
+	 */
+	public void setCurrent(TagNode node) {
+		if (node != null)
+			current = node;
+	}
+
+	/**
+	 * @return the node currently selected
+	 */
+	public TagNode current() {
+		return current;
+	}
+
+	/**
+	 * Sets the current code element to the given element
+	 * 
+	 * @param code
+	 *            the code element to be marked as current
+	 */
+	public void setCurrentCode(ICodeElement code) {
+		currentCode = code;
+	}
+
+	/**
+	 * Returns the currently selected code element
+	 * 
+	 * @return The currently selected code element
+	 */
+	public ICodeElement currentCode() {
+		return currentCode;
+	}
+
+	/**
+	 * Searches the children of the current node for all unvisited nodes
+	 * 
+	 * @return The nodes which are unvisited
+	 */
+	public Iterable<TagNode> getUnvisited() {
+		return tree.getUnvisited(current);
+	}
+}
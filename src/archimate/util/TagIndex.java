@@ -0,0 +1,354 @@
+package archimate.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+
+import archimate.Activator;
+import archimate.codegen.JavaHelper;
+
+/**
+ * This class implements an index of the archiMateTags declared in the source
+ * files. For every file the index keeps the hash of its contents together with
+ * the tag, identifier and package of every tagged type declaration. The index
+ * is stored in the state location of the plugin, so that unchanged files need
+ * not be parsed again to record their archiMateTags.
+ * 
+ * @author Samuel Esposito
+ */
+public class TagIndex {
+
+	// Name of the file the index is stored in
+	private static final String INDEX_FILE = "tagindex.properties";
+	// Separator between the hash and the tags of a file
+	private static final String HASH_SEPARATOR = "|";
+	// Separator between the tags of a file
+	private static final String TAG_SEPARATOR = ";";
+	// Separator between the fields of a tag
+	private static final String FIELD_SEPARATOR = ",";
+	// The shared instance
+	private static TagIndex index;
+	// The indexed files mapped on their hash and tags
+	private Properties entries;
+	// The file the index is stored in
+	private File indexFile;
+	// Whether the index changed since it was loaded
+	private boolean changed;
+
+	/**
+	 * An archiMateTag found on a type declaration in a source file
+	 */
+	public static class Entry {
+		// The archiMateTag
+		private String tag;
+		// The identifier of the tagged type
+		private String name;
+		// The package of the tagged type
+		private String packageName;
+
+		/**
+		 * Creates a new {@link Entry}
+		 * 
+		 * @param tag
+		 *            the archiMateTag
+		 * @param name
+		 *            the identifier of the tagged type
+		 * @param packageName
+		 *            the package of the tagged type
+		 */
+		public Entry(String tag, String name, String packageName) {
+			this.tag = tag;
+			this.name = name;
+			this.packageName = packageName;
+		}
+
+		/**
+		 * Returns the archiMateTag
+		 * 
+		 * @return The archiMateTag
+		 */
+		public String tag() {
+			return tag;
+		}
+
+		/**
+		 * Returns the identifier of the tagged type
+		 * 
+		 * @return The identifier of the tagged type
+		 */
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * Returns the package of the tagged type
+		 * 
+		 * @return The package of the tagged type
+		 */
+		public String packageName() {
+			return packageName;
+		}
+	}
+
+	/**
+	 * The hash of the contents of a source file, together with whether the
+	 * file contains the archiMateTag marker
+	 */
+	public static class Scan {
+		// The hash of the contents of the file
+		private String hash;
+		// Whether the file may contain an archiMateTag
+		private boolean containsTag;
+
+		// Creates a new scan of a file
+		private Scan(String hash, boolean containsTag) {
+			this.hash = hash;
+			this.containsTag = containsTag;
+		}
+
+		/**
+		 * Returns the hash of the contents of the file
+		 * 
+		 * @return The hash of the contents of the file, or an empty string
+		 *         when the file could not be read
+		 */
+		public String hash() {
+			return hash;
+		}
+
+		/**
+		 * Returns whether the file contains the archiMateTag marker. When the
+		 * file could not be read, or its charset does not encode the marker
+		 * byte for character, the file is assumed to contain the marker.
+		 * 
+		 * @return Whether the file may contain an archiMateTag
+		 */
+		public boolean containsTag() {
+			return containsTag;
+		}
+	}
+
+	// Creates a new index and loads it from the plugin state location
+	private TagIndex() {
+		entries = new Properties();
+		if (Activator.getDefault() != null) {
+			indexFile = Activator.getDefault().getStateLocation().append(
+					INDEX_FILE).toFile();
+			load();
+		}
+	}
+
+	/**
+	 * Returns the shared {@link TagIndex}
+	 * 
+	 * @return The shared {@link TagIndex}
+	 */
+	public static synchronized TagIndex getDefault() {
+		if (index == null)
+			index = new TagIndex();
+		return index;
+	}
+
+	/**
+	 * Computes the hash of the contents of the given file and searches the
+	 * contents for the archiMateTag marker while they are streamed, so that
+	 * the file is read once for both. The bytes are searched without decoding
+	 * them.
+	 * 
+	 * @param file
+	 *            the file to scan
+	 * @return The hash of the contents of the file and whether it contains
+	 *         the marker
+	 */
+	public Scan scan(IFile file) {
+		byte[] marker = marker(file);
+		boolean found = marker == null;
+		InputStream contents = null;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			contents = file.getContents();
+			byte[] buffer = new byte[8192];
+			int read;
+			// The number of bytes of the marker matched so far, which carries
+			// a partial match over to the next buffer. The first byte of the
+			// marker does not occur in the rest of it, so a mismatch can only
+			// start a new match at the mismatching byte.
+			int matched = 0;
+			while ((read = contents.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+				for (int index = 0; !found && index < read; ++index) {
+					if (buffer[index] == marker[matched])
+						found = ++matched == marker.length;
+					else
+						matched = buffer[index] == marker[0] ? 1 : 0;
+				}
+			}
+			StringBuilder hash = new StringBuilder();
+			for (byte value : digest.digest()) {
+				hash.append(Integer.toHexString((value & 0xff) | 0x100)
+						.substring(1));
+			}
+			return new Scan(hash.toString(), found);
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+		} catch (CoreException e) {
+			System.out.println("Reading of file failed for file at "
+					+ file.getFullPath() + ".");
+			e.printStackTrace();
+		} catch (IOException e) {
+			System.out.println("Reading of file failed for file at "
+					+ file.getFullPath() + ".");
+			e.printStackTrace();
+		} finally {
+			if (contents != null) {
+				try {
+					contents.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return new Scan("", true);
+	}
+
+	// Returns the bytes of the archiMateTag marker in the charset of the file,
+	// or null when the charset does not encode the marker byte for character
+	private byte[] marker(IFile file) {
+		try {
+			byte[] marker = JavaHelper.ARCHIMATETAG.getBytes(file
+					.getCharset());
+			if (marker.length == JavaHelper.ARCHIMATETAG.length())
+				return marker;
+		} catch (Exception e) {
+			// The file is assumed to contain the marker
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the index holds the tags of the file with the given hash
+	 * 
+	 * @param file
+	 *            the file to look up
+	 * @param hash
+	 *            the hash of the current contents of the file
+	 * @return Whether the indexed tags of the file are up to date
+	 */
+	public boolean isCurrent(IFile file, String hash) {
+		String value = entries.getProperty(key(file));
+		return hash.length() > 0 && value != null
+				&& value.startsWith(hash + HASH_SEPARATOR);
+	}
+
+	/**
+	 * Returns the indexed tags of the file
+	 * 
+	 * @param file
+	 *            the file to look up
+	 * @return The indexed tags of the file
+	 */
+	public ArrayList<Entry> tags(IFile file) {
+		ArrayList<Entry> tags = new ArrayList<Entry>();
+		String value = entries.getProperty(key(file));
+		if (value != null) {
+			String list = value.substring(value.indexOf(HASH_SEPARATOR) + 1);
+			for (String tag : list.split(TAG_SEPARATOR)) {
+				String[] fields = tag.split(FIELD_SEPARATOR);
+				if (fields.length == 3)
+					tags.add(new Entry(fields[0], fields[1], fields[2]));
+			}
+		}
+		return tags;
+	}
+
+	/**
+	 * Stores the tags found in the file with the given hash
+	 * 
+	 * @param file
+	 *            the indexed file
+	 * @param hash
+	 *            the hash of the contents of the file
+	 * @param tags
+	 *            the tags found in the file
+	 */
+	public void update(IFile file, String hash, ArrayList<Entry> tags) {
+		if (hash.length() == 0)
+			return;
+		StringBuilder value = new StringBuilder(hash);
+		value.append(HASH_SEPARATOR);
+		for (Entry entry : tags) {
+			if (entry != tags.get(0))
+				value.append(TAG_SEPARATOR);
+			value.append(entry.tag()).append(FIELD_SEPARATOR).append(
+					entry.name()).append(FIELD_SEPARATOR).append(
+					entry.packageName());
+		}
+		entries.setProperty(key(file), value.toString());
+		changed = true;
+	}
+
+	/**
+	 * Writes the index to the plugin state location if it has changed
+	 */
+	public void save() {
+		if (!changed || indexFile == null)
+			return;
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(indexFile);
+			entries.store(out, "archiMateTag index");
+			changed = false;
+		} catch (IOException e) {
+			System.out.println("Could not write the archiMateTag index to "
+					+ indexFile + ".");
+			e.printStackTrace();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	// Reads the index from the plugin state location
+	private void load() {
+		if (!indexFile.exists())
+			return;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(indexFile);
+			entries.load(in);
+		} catch (IOException e) {
+			System.out.println("Could not read the archiMateTag index from "
+					+ indexFile + ".");
+			e.printStackTrace();
+			entries.clear();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	// Returns the key of the file in the index
+	private String key(IFile file) {
+		return file.getFullPath().toString();
+	}
+}
@@ -1,6 +1,7 @@
 package archimate.util;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
 import org.eclipse.uml2.uml.NamedElement;
@@ -17,18 +18,33 @@ import archimate.codegen.ICodeElement;
 public class TagNode {
 	// the nodes parent
 	private TagNode parent;
+	// the tree the node is part of
+	private TagTree tree;
 	// the nodes children
 	private ArrayList<TagNode> children;
+	// the nodes children mapped on their tag
+	private HashMap<String, TagNode> childIndex;
 	// the nodes tag
 	private String tag;
-	// whether the node has been visited
-	private boolean visited = false;
+	// the visit epoch of the tree in which the node has been visited, read by
+	// concurrent traversals
+	private volatile int visited = -1;
 	// the associated source code elements
 	private ArrayList<ICodeElement> source;
+	// the associated source code elements mapped on their identifiers
+	private HashMap<String, ArrayList<ICodeElement>> sourceIndex;
+	// the associated source code elements mapped on their archiMateTag
+	private HashMap<String, ICodeElement> tagIndex;
 	// count of the unvisited source elements
 	private int unvisited;
 	// whether the tagnode contains only optional source elements
 	private boolean onlyOptional = true;
+	// the content hash of the node and its descendants, computed when first
+	// needed and discarded when they change
+	private volatile String contentHash;
+	// the version of the recorded identifiers the content hash was computed
+	// for
+	private int hashVersion;
 
 	/**
 	 * Creates a new node with the given tag
@@ -39,7 +55,10 @@ public class TagNode {
 	public TagNode(String tag) {
 		this.tag = tag;
 		children = new ArrayList<TagNode>();
+		childIndex = new HashMap<String, TagNode>();
 		source = new ArrayList<ICodeElement>();
+		sourceIndex = new HashMap<String, ArrayList<ICodeElement>>();
+		tagIndex = new HashMap<String, ICodeElement>();
 		unvisited = 0;
 	}
 
@@ -71,6 +90,26 @@ public class TagNode {
 		return parent != null;
 	}
 
+	// Returns the tree the node is part of
+	TagTree tree() {
+		return tree;
+	}
+
+	// Attaches the node and its descendants to the given tree, or detaches
+	// them from their tree when the given tree is null
+	void setTree(TagTree tree) {
+		boolean wasVisited = visited();
+		if (this.tree != null)
+			this.tree.unregister(this);
+		this.tree = tree;
+		if (tree != null)
+			tree.register(this);
+		visited = wasVisited ? epoch() : -1;
+		for (TagNode child : children) {
+			child.setTree(tree);
+		}
+	}
+
 	/**
 	 * Returns the nodes tag
 	 * 
@@ -95,36 +134,97 @@ public class TagNode {
 	 * @return Whether the node has been visited
 	 */
 	public boolean visited() {
-		return visited;
+		return visited == epoch();
+	}
+
+	// Returns the visit epoch of the tree the node is part of
+	private int epoch() {
+		return tree == null ? 0 : tree.epoch();
+	}
+
+	/**
+	 * Returns a hash of the tag and the source elements of the node, rolled up
+	 * with the content hashes of its children. The hash is kept until a child
+	 * or source element of the node or one of its descendants is added,
+	 * removed or changed, or until identifiers are recorded.
+	 * 
+	 * @return The content hash of the node
+	 */
+	public String contentHash() {
+		int version = ContentHash.version();
+		String hash = contentHash;
+		if (hash == null || hashVersion != version) {
+			StringBuilder content = new StringBuilder(tag).append('\n');
+			synchronized (this) {
+				for (ICodeElement element : source) {
+					content.append(element.contentHash()).append('\n');
+				}
+			}
+			content.append('\n');
+			for (TagNode child : children) {
+				content.append(child.contentHash()).append('\n');
+			}
+			hash = ContentHash.digest(content.toString());
+			hashVersion = version;
+			contentHash = hash;
+		}
+		return hash;
 	}
 
 	/**
-	 * Sets the visited state to true
+	 * Discards the content hashes of the node and its ancestors. Called by the
+	 * source elements of the node when they change.
 	 */
-	public void resetVisited() {
-		visited = false;
+	public void contentChanged() {
+		for (TagNode node = this; node != null; node = node.parent) {
+			node.contentHash = null;
+		}
 	}
 
 	/**
-	 * Sets the visited state to true
+	 * Sets the visited state to false
+	 */
+	public synchronized void resetVisited() {
+		visited = -1;
+	}
+
+	// Marks the node and its source elements as unvisited. Called by the tree
+	// when it is reused for another traversal.
+	synchronized void reset() {
+		visited = -1;
+		unvisited = 0;
+		for (ICodeElement element : source) {
+			element.reset();
+			if (!element.optional())
+				++unvisited;
+		}
+	}
+
+	/**
+	 * Sets the visited state to true. Only one of the traversals visiting the
+	 * node at the same time sees the state change.
 	 * 
 	 * @return whether the state changed
 	 */
-	public boolean setVisited() {
-		if (unvisited == 0 && !visited) {
-			visited = true;
+	public synchronized boolean setVisited() {
+		int epoch = epoch();
+		if (unvisited == 0 && visited != epoch) {
+			visited = epoch;
 			return true;
 		}
 		return false;
 	}
 
 	/**
-	 * Marks the source element as visited.
+	 * Marks the source element as visited. An element visited before is not
+	 * counted again.
 	 * 
 	 * @param element
 	 *            the visited element
 	 */
-	public void setVisited(ICodeElement element) {
+	public synchronized void setVisited(ICodeElement element) {
+		if (element.visited())
+			return;
 		element.setVisited();
 		if (!element.optional())
 			--unvisited;
@@ -139,6 +239,36 @@ public class TagNode {
 	public void addChild(TagNode node) {
 		node.parent = this;
 		children.add(node);
+		if (!childIndex.containsKey(node.tag()))
+			childIndex.put(node.tag(), node);
+		if (node.tree != tree)
+			node.setTree(tree);
+		contentChanged();
+	}
+
+	/**
+	 * Removes a child from the node
+	 * 
+	 * @param node
+	 *            The child to remove
+	 * @return Whether the node contained the child
+	 */
+	public boolean removeChild(TagNode node) {
+		if (!children.remove(node))
+			return false;
+		if (node.tree != null)
+			node.setTree(null);
+		if (childIndex.get(node.tag()) == node) {
+			childIndex.remove(node.tag());
+			for (TagNode child : children) {
+				if (child.tag().equals(node.tag())) {
+					childIndex.put(child.tag(), child);
+					break;
+				}
+			}
+		}
+		contentChanged();
+		return true;
 	}
 
 	/**
@@ -167,16 +297,12 @@ public class TagNode {
 	 * @return Whether the node has a child with a matching tag
 	 */
 	public boolean hasChild(String tag) {
-		for (Iterator<TagNode> iter = children.iterator(); iter.hasNext();) {
-			if (iter.next().tag().equals(tag)) {
-				return true;
-			}
-		}
-		return false;
+		return childIndex.containsKey(tag);
 	}
 
 	/**
-	 * Returns the nodes children
+	 * Returns the nodes children. The list must not be modified directly, use
+	 * {@link #addChild(TagNode)} and {@link #removeChild(TagNode)} instead.
 	 * 
 	 * @return The nodes children
 	 */
@@ -192,13 +318,7 @@ public class TagNode {
 	 * @return The child with the matching tag
 	 */
 	public TagNode child(String tag) {
-		for (Iterator<TagNode> iter = children.iterator(); iter.hasNext();) {
-			TagNode node = iter.next();
-			if (node.tag().equals(tag)) {
-				return node;
-			}
-		}
-		return null;
+		return childIndex.get(tag);
 	}
 
 	/**
@@ -211,18 +331,82 @@ public class TagNode {
 	 *            {@link ICodeElement} that will be added to the list of source
 	 *            elements
 	 */
-	public void addSource(ICodeElement code) {
+	public synchronized void addSource(ICodeElement code) {
 		for (ICodeElement element : source) {
 			if (element.isInstanceof(code)) {
 				element.addUmlElements(code.umlElements());
+				if (tree != null)
+					tree.registerSource(this, code);
 				return;
 			}
 		}
 		source.add(code);
+		code.addOwner(this);
+		for (String key : keys(code)) {
+			ArrayList<ICodeElement> elements = sourceIndex.get(key);
+			if (elements == null) {
+				elements = new ArrayList<ICodeElement>();
+				sourceIndex.put(key, elements);
+			}
+			elements.add(code);
+		}
+		if (!tagIndex.containsKey(code.archiMateTag()))
+			tagIndex.put(code.archiMateTag(), code);
 		if (!code.optional()) {
 			++unvisited;
 			onlyOptional = false;
 		}
+		if (tree != null)
+			tree.registerSource(this, code);
+		contentChanged();
+	}
+
+	/**
+	 * Removes a {@link ICodeElement} from the list of source elements and
+	 * keeps track of the nr of unvisited code elements
+	 * 
+	 * @param code
+	 *            {@link ICodeElement} that will be removed from the list of
+	 *            source elements
+	 * @return Whether the list contained the element
+	 */
+	public synchronized boolean removeSource(ICodeElement code) {
+		if (!source.remove(code))
+			return false;
+		code.removeOwner(this);
+		for (String key : keys(code)) {
+			ArrayList<ICodeElement> elements = sourceIndex.get(key);
+			if (elements != null) {
+				elements.remove(code);
+				if (elements.isEmpty())
+					sourceIndex.remove(key);
+			}
+		}
+		if (tagIndex.get(code.archiMateTag()) == code) {
+			tagIndex.remove(code.archiMateTag());
+			for (ICodeElement element : source) {
+				if (element.archiMateTag().equals(code.archiMateTag())) {
+					tagIndex.put(element.archiMateTag(), element);
+					break;
+				}
+			}
+		}
+		if (!code.optional() && !code.visited())
+			--unvisited;
+		contentChanged();
+		return true;
+	}
+
+	// Returns the identifiers the source element can be matched with
+	private ArrayList<String> keys(ICodeElement code) {
+		ArrayList<String> keys = new ArrayList<String>();
+		if (code instanceof JavaMethod) {
+			keys.add(((JavaMethod) code).name());
+			keys.add(((JavaMethod) code).invocationMethod());
+		} else {
+			keys.add(code.identifier());
+		}
+		return keys;
 	}
 
 	/**
@@ -235,7 +419,9 @@ public class TagNode {
 	}
 
 	/**
-	 * Returns the list of {@link ICodeElement}s
+	 * Returns the list of {@link ICodeElement}s. The list must not be modified
+	 * directly, use {@link #addSource(ICodeElement)} and
+	 * {@link #removeSource(ICodeElement)} instead.
 	 * 
 	 * @return The list of {@link ICodeElement}s
 	 */
@@ -251,8 +437,12 @@ public class TagNode {
 	 * @return The source element that matches with the identifier
 	 */
 	public ICodeElement getSourceByTag(String tag) {
+		ICodeElement element = tagIndex.get(tag);
+		if (element != null && element.archiMateTag().equals(tag))
+			return element;
+		// the tag of the element may have been set after it was added
 		for (Iterator<ICodeElement> iter = source.iterator(); iter.hasNext();) {
-			ICodeElement element = iter.next();
+			element = iter.next();
 			if (element.archiMateTag().equals(tag)) {
 				return element;
 			}
@@ -268,10 +458,12 @@ public class TagNode {
 	 * @return The source element that matches with the identifier
 	 */
 	public ICodeElement getSource(String identifier, String packageName) {
-		for (Iterator<ICodeElement> iter = source.iterator(); iter.hasNext();) {
-			ICodeElement element = iter.next();
-			if (element.equals(identifier, packageName)) {
-				return element;
+		ArrayList<ICodeElement> elements = sourceIndex.get(identifier);
+		if (elements != null) {
+			for (ICodeElement element : elements) {
+				if (element.equals(identifier, packageName)) {
+					return element;
+				}
 			}
 		}
 		return null;
@@ -302,14 +494,10 @@ public class TagNode {
 	 * @returns Whether the source has been found
 	 */
 	public ICodeElement tickOffSource(String name, String packageName) {
-		for (Iterator<ICodeElement> iter = source.iterator(); iter.hasNext();) {
-			ICodeElement element = iter.next();
-			if (element.equals(name, packageName)) {
-				setVisited(element);
-				return element;
-			}
-		}
-		return null;
+		ICodeElement element = getSource(name, packageName);
+		if (element != null)
+			setVisited(element);
+		return element;
 	}
 
 	/**
@@ -345,6 +533,7 @@ public class TagNode {
 				((JavaClass) element).recordIdentifier(identifier, packageName,
 						tag);
 		}
+		ContentHash.namesChanged();
 	}
 
 	/**
@@ -383,7 +572,7 @@ public class TagNode {
 	// Returns the state of the node for debug purposes
 	public String toString() {
 		String out = "";
-		out += tag + (visited ? " :: visited" : "") + "\n";
+		out += tag + (visited() ? " :: visited" : "") + "\n";
 		for (ICodeElement element : source) {
 			out += "\t" + element.toString();
 		}
@@ -1,7 +1,10 @@
 package archimate.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.eclipse.uml2.uml.NamedElement;
 import org.eclipse.uml2.uml.Stereotype;
@@ -10,7 +13,9 @@ import archimate.codegen.ICodeElement;
 
 /**
  * This class implements the tree containing all <code>archiMateTags</code> in a
- * hierarchical structure
+ * hierarchical structure. The structure of the tree is not changed while source
+ * files are traversed; the node selected during a traversal is kept in a
+ * {@link TagContext} per file.
  * 
  * @author Samuel Esposito
  * 
@@ -22,21 +27,94 @@ public class TagTree {
 	public static final String ROOT = "root";
 	// tree root
 	private TagNode root;
-	// currently selected node
-	private TagNode current;
-	// currently selected code
-	private ICodeElement currentCode;
+	// the visit epoch, nodes marked in an earlier epoch are unvisited
+	private volatile int epoch = 0;
 	// restricted interfaces
 	ArrayList<JavaClass> interfaces = new ArrayList<JavaClass>();
 	// restricted methods
 	ArrayList<JavaMethod> methods = new ArrayList<JavaMethod>();
+	// restricted methods mapped on their name, built when first needed
+	private HashMap<String, ArrayList<JavaMethod>> methodIndex;
+	// restricted interfaces mapped on their qualified intended name, built
+	// when first needed after the identifiers have been recorded
+	private HashMap<String, ArrayList<JavaClass>> interfaceIndex;
+	// nodes in the tree mapped on their tag
+	private HashMap<String, ArrayList<TagNode>> tags = new HashMap<String, ArrayList<TagNode>>();
+	// nodes in the tree mapped on the stereotypes of their source
+	private HashMap<String, ArrayList<TagNode>> stereotypes = new HashMap<String, ArrayList<TagNode>>();
 
 	/**
-	 * Creates a new tree, sets the tree root and marks it as selected
+	 * Creates a new tree and sets the tree root
 	 */
 	public TagTree() {
 		root = new TagNode(ROOT);
-		current = root;
+		root.setTree(this);
+	}
+
+	// Adds the node and the stereotypes of its source to the indexes. Called by
+	// the node when it is attached to the tree.
+	void register(TagNode node) {
+		addToIndex(tags, node.tag(), node);
+		for (ICodeElement element : node.source()) {
+			registerSource(node, element);
+		}
+	}
+
+	// Adds the stereotypes of the source element to the index of the node.
+	// Called by the node when source is added to it.
+	void registerSource(TagNode node, ICodeElement element) {
+		for (NamedElement umlElement : element.umlElements()) {
+			for (Stereotype stereotype : umlElement.getAppliedStereotypes()) {
+				addToIndex(stereotypes, stereotype.getName(), node);
+			}
+		}
+	}
+
+	// Removes the node from the indexes. Called by the node when it is
+	// detached from the tree.
+	void unregister(TagNode node) {
+		removeFromIndex(tags, node.tag(), node);
+		for (ICodeElement element : node.source()) {
+			for (NamedElement umlElement : element.umlElements()) {
+				for (Stereotype stereotype : umlElement
+						.getAppliedStereotypes()) {
+					removeFromIndex(stereotypes, stereotype.getName(), node);
+				}
+			}
+		}
+	}
+
+	// Adds the node to the index under the given key
+	private void addToIndex(HashMap<String, ArrayList<TagNode>> index,
+			String key, TagNode node) {
+		ArrayList<TagNode> nodes = index.get(key);
+		if (nodes == null) {
+			nodes = new ArrayList<TagNode>();
+			index.put(key, nodes);
+		}
+		if (!nodes.contains(node))
+			nodes.add(node);
+	}
+
+	// Removes the node from the index under the given key
+	private void removeFromIndex(HashMap<String, ArrayList<TagNode>> index,
+			String key, TagNode node) {
+		ArrayList<TagNode> nodes = index.get(key);
+		if (nodes != null) {
+			nodes.remove(node);
+			if (nodes.isEmpty())
+				index.remove(key);
+		}
+	}
+
+	// Returns whether the node is a descendant of the given ancestor
+	private boolean isDescendant(TagNode node, TagNode ancestor) {
+		for (TagNode parent = node.parent(); parent != null; parent = parent
+				.parent()) {
+			if (parent == ancestor)
+				return true;
+		}
+		return false;
 	}
 
 	/**
@@ -49,8 +127,22 @@ public class TagTree {
 	 * @param packageName
 	 *            the name of the package
 	 */
-	public void addRestrictedInterface(JavaClass restrictedInterface) {
+	public synchronized void addRestrictedInterface(
+			JavaClass restrictedInterface) {
 		interfaces.add(restrictedInterface);
+		interfaceIndex = null;
+	}
+
+	/**
+	 * Removes an interface from the list of restricted interfaces
+	 * 
+	 * @param restrictedInterface
+	 *            the interface to remove
+	 */
+	public synchronized void removeRestrictedInterface(
+			JavaClass restrictedInterface) {
+		interfaces.remove(restrictedInterface);
+		interfaceIndex = null;
 	}
 
 	/**
@@ -63,70 +155,110 @@ public class TagTree {
 	 * @param packageName
 	 *            the package of the class the method is defined in
 	 */
-	public void addRestrictedMethod(JavaMethod restrictedMethod) {
+	public synchronized void addRestrictedMethod(JavaMethod restrictedMethod) {
 		methods.add(restrictedMethod);
+		methodIndex = null;
 	}
 
 	/**
-	 * Returns the list of restricted interfaces
+	 * Removes methods from the list of restricted methods
 	 * 
-	 * @return The list of restricted interfaces
+	 * @param restrictedMethods
+	 *            the methods to remove
 	 */
-	public ArrayList<JavaClass> restrictedInterfaces() {
-		return interfaces;
+	public synchronized void removeRestrictedMethods(
+			Collection<? extends ICodeElement> restrictedMethods) {
+		methods.removeAll(restrictedMethods);
+		methodIndex = null;
 	}
 
 	/**
-	 * Returns the list of restricted methods
+	 * Returns the list of restricted interfaces
 	 * 
-	 * @return The list of restricted methods
+	 * @return The list of restricted interfaces
 	 */
-	public ArrayList<JavaMethod> restrictedMethods() {
-		return methods;
+	public ArrayList<JavaClass> restrictedInterfaces() {
+		return interfaces;
 	}
 
 	/**
-	 * @return the root of the tree
+	 * Returns the restricted interfaces with the given intended name, in the
+	 * order of the list of restricted interfaces. The intended names depend on
+	 * the recorded identifiers, so this method may only be used once the
+	 * source has been recorded. The returned list must not be modified.
+	 * 
+	 * @param qualifiedName
+	 *            the intended name of the interfaces, qualified with their
+	 *            package
+	 * @return The restricted interfaces with the given name
 	 */
-	public TagNode root() {
-		return root;
+	public synchronized ArrayList<JavaClass> restrictedInterfaces(
+			String qualifiedName) {
+		if (interfaceIndex == null) {
+			interfaceIndex = new HashMap<String, ArrayList<JavaClass>>();
+			for (JavaClass restrictedInterface : interfaces) {
+				String key = TypeHierarchy.qualifiedName(restrictedInterface
+						.packageName(), restrictedInterface.intendedName());
+				ArrayList<JavaClass> named = interfaceIndex.get(key);
+				if (named == null) {
+					named = new ArrayList<JavaClass>();
+					interfaceIndex.put(key, named);
+				}
+				named.add(restrictedInterface);
+			}
+		}
+		ArrayList<JavaClass> named = interfaceIndex.get(qualifiedName);
+		return named == null ? new ArrayList<JavaClass>() : named;
 	}
 
 	/**
-	 * Marks a node as selected
+	 * Returns the list of restricted methods
 	 * 
-	 * @param node
-	 *            the node you want to select
+	 * @return The list of restricted methods
 	 */
-	public void setCurrent(TagNode node) {
-		if (node != null)
-			current = node;
+	public ArrayList<JavaMethod> restrictedMethods() {
+		return methods;
 	}
 
 	/**
-	 * @return the node currently selected
+	 * Returns the restricted methods with the given name, in the order of the
+	 * list of restricted methods. The returned list must not be modified.
+	 * 
+	 * @param name
+	 *            the name of the methods
+	 * @return The restricted methods with the given name
 	 */
-	public TagNode current() {
-		return current;
+	public synchronized ArrayList<JavaMethod> restrictedMethods(String name) {
+		if (methodIndex == null) {
+			methodIndex = new HashMap<String, ArrayList<JavaMethod>>();
+			for (JavaMethod method : methods) {
+				ArrayList<JavaMethod> named = methodIndex.get(method.name());
+				if (named == null) {
+					named = new ArrayList<JavaMethod>();
+					methodIndex.put(method.name(), named);
+				}
+				named.add(method);
+			}
+		}
+		ArrayList<JavaMethod> named = methodIndex.get(name);
+		return named == null ? new ArrayList<JavaMethod>() : named;
 	}
 
 	/**
-	 * Sets the current code element to the given element
-	 * 
-	 * @param code
-	 *            the code element to be marked as current
+	 * @return the root of the tree
 	 */
-	public void setCurrentCode(ICodeElement code) {
-		currentCode = code;
+	public TagNode root() {
+		return root;
 	}
 
 	/**
-	 * Returns the currently selected code element
+	 * Creates a new context for traversing a source file against the tree,
+	 * with the root of the tree selected
 	 * 
-	 * @return The currently selected code element
+	 * @return The new {@link TagContext}
 	 */
-	public ICodeElement currentCode() {
-		return currentCode;
+	public TagContext newContext() {
+		return new TagContext(this);
 	}
 
 	/**
@@ -170,12 +302,34 @@ public class TagTree {
 	 * @return A child having a matching tag
 	 */
 	public TagNode getNode(TagNode node, String tag) {
+		// the children are indexed on their tag by their parent
+		TagNode child = node.child(tag);
+		if (child != null)
+			return child;
+		if (node.tree() == this) {
+			// a tag occurring once in the tree needs no search
+			ArrayList<TagNode> nodes = tags.get(tag);
+			if (nodes == null)
+				return null;
+			if (nodes.size() == 1)
+				return isDescendant(nodes.get(0), node) ? nodes.get(0) : null;
+		}
+		for (TagNode descendant : node.children()) {
+			TagNode found = searchNode(descendant, tag);
+			if (found != null)
+				return found;
+		}
+		return null;
+	}
+
+	// Recursively searches the children of the node for a matching tag
+	private TagNode searchNode(TagNode node, String tag) {
 		for (TagNode child : node.children()) {
 			if (child.tag().equals(tag))
 				return child;
 		}
 		for (TagNode child : node.children()) {
-			TagNode found = getNode(child, tag);
+			TagNode found = searchNode(child, tag);
 			if (found != null)
 				return found;
 		}
@@ -183,67 +337,115 @@ public class TagTree {
 	}
 
 	/**
-	 * Searches the children of the current node for all unvisited nodes
+	 * Searches the children of the given node for all unvisited nodes. The
+	 * nodes are found while iterating, without collecting them in a list.
 	 * 
-	 * @return A list of nodes which are unvisited
+	 * @param node
+	 *            the node which children are searched
+	 * @return The nodes which are unvisited
 	 */
-	public ArrayList<TagNode> getUnvisited() {
-		ArrayList<TagNode> unvisited = new ArrayList<TagNode>();
-		for (Iterator<TagNode> iter = current.children().iterator(); iter
-				.hasNext();) {
-			TagNode child = iter.next();
-			if (!child.visited()) {
-				unvisited.add(child);
+	public Iterable<TagNode> getUnvisited(final TagNode node) {
+		return new Iterable<TagNode>() {
+			public Iterator<TagNode> iterator() {
+				return new UnvisitedIterator(node, false);
 			}
-		}
-		return unvisited;
+		};
 	}
 
 	/**
-	 * Searches the tree for all unvisited nodes
+	 * Searches the tree for all unvisited nodes. The nodes are found in
+	 * pre-order while iterating, without collecting them in a list.
 	 * 
-	 * @return A list of nodes which are unvisited
+	 * @return The nodes which are unvisited
 	 */
-	public ArrayList<TagNode> getAllUnvisited() {
-		ArrayList<TagNode> unvisited = new ArrayList<TagNode>();
-		for (Iterator<TagNode> iter = root.children().iterator(); iter
-				.hasNext();) {
-			TagNode child = iter.next();
-			if (!child.visited()) {
-				unvisited.add(child);
+	public Iterable<TagNode> getAllUnvisited() {
+		return new Iterable<TagNode>() {
+			public Iterator<TagNode> iterator() {
+				return new UnvisitedIterator(root, true);
 			}
-			unvisited.addAll(getAllUnvisited(child));
-		}
-		return unvisited;
+		};
 	}
 
-	// Recursively searches for all unvisited nodes in a tree
-	private ArrayList<TagNode> getAllUnvisited(TagNode node) {
-		ArrayList<TagNode> unvisited = new ArrayList<TagNode>();
-		for (Iterator<TagNode> iter = node.children().iterator(); iter
-				.hasNext();) {
-			TagNode child = iter.next();
-			if (!child.visited()) {
-				unvisited.add(child);
+	// Iterates over the unvisited descendants of a node, keeping one iterator
+	// over the children for every level it descended
+	private static class UnvisitedIterator implements Iterator<TagNode> {
+		// the iterators over the children of the levels being searched
+		private ArrayList<Iterator<TagNode>> levels = new ArrayList<Iterator<TagNode>>();
+		// whether the descendants of the children are searched as well
+		private boolean deep;
+		// the next unvisited node, or null when it is still to be found
+		private TagNode next;
+
+		// Creates an iterator over the unvisited children or descendants
+		private UnvisitedIterator(TagNode node, boolean deep) {
+			this.deep = deep;
+			levels.add(node.children().iterator());
+		}
+
+		// Finds the next unvisited node
+		public boolean hasNext() {
+			while (next == null && !levels.isEmpty()) {
+				Iterator<TagNode> level = levels.get(levels.size() - 1);
+				if (!level.hasNext()) {
+					levels.remove(levels.size() - 1);
+					continue;
+				}
+				TagNode child = level.next();
+				if (deep && child.hasChildren())
+					levels.add(child.children().iterator());
+				if (!child.visited())
+					next = child;
 			}
-			unvisited.addAll(getAllUnvisited(child));
+			return next != null;
+		}
+
+		// Returns the next unvisited node
+		public TagNode next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			TagNode node = next;
+			next = null;
+			return node;
 		}
-		return unvisited;
+
+		// Removing nodes is not supported
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// Returns the current visit epoch. A node is visited when it has been
+	// marked in the current epoch.
+	int epoch() {
+		return epoch;
 	}
 
 	/**
-	 * Marks all nodes in the tree as visited
+	 * Marks all nodes in the tree as unvisited, by starting a new visit epoch
 	 */
-	public void resetVisited() {
-		resetVisited(root);
+	public synchronized void resetVisited() {
+		++epoch;
 	}
 
-	// Recursive method setting the state of all nodes in a tree to unvisited
-	private void resetVisited(TagNode node) {
-		node.resetVisited();
-		for (Iterator<TagNode> iter = node.children().iterator(); iter
-				.hasNext();) {
-			resetVisited(iter.next());
+	/**
+	 * Discards the state of the last traversal of the source code: all nodes
+	 * and their source elements are marked as unvisited and the recorded
+	 * identifiers are discarded, so that the tree can be traversed again
+	 */
+	public void reset() {
+		resetVisited();
+		reset(root);
+		ContentHash.namesChanged();
+		synchronized (this) {
+			interfaceIndex = null;
+		}
+	}
+
+	// Recursively resets the nodes in a tree
+	private void reset(TagNode node) {
+		node.reset();
+		for (TagNode child : node.children()) {
+			reset(child);
 		}
 	}
 
@@ -257,6 +459,22 @@ public class TagTree {
 	 * @return the list of found nodes
 	 */
 	public TagNode getNodeByStereotype(String stereotype) {
+		TagNode found = null;
+		int matches = 0;
+		ArrayList<TagNode> nodes = stereotypes.get(stereotype);
+		if (nodes != null) {
+			for (TagNode candidate : nodes) {
+				// the source of the node may have been removed since
+				if (candidate.tree() == this && candidate != root
+						&& checkNode(candidate, stereotype)) {
+					found = candidate;
+					++matches;
+				}
+			}
+		}
+		// only a stereotype occurring more than once needs the search order
+		if (matches <= 1)
+			return found;
 		return getNodeByStereotype(root, stereotype);
 	}
 
@@ -300,7 +518,7 @@ public class TagTree {
 		if (node != null) {
 			TagNode parent = node.parent();
 			if (parent != null) {
-				parent.children().remove(node);
+				parent.removeChild(node);
 			}
 			node.setParent(null);
 			dropCode(node);
@@ -328,6 +546,24 @@ public class TagTree {
 		dropNode(getNode(tag));
 	}
 
+	/**
+	 * Returns a hash of the restricted interfaces and methods, computed from
+	 * their content hashes
+	 * 
+	 * @return The content hash of the restrictions
+	 */
+	public synchronized String restrictionsHash() {
+		StringBuilder content = new StringBuilder();
+		for (JavaClass restrictedInterface : interfaces) {
+			content.append(restrictedInterface.contentHash()).append('\n');
+		}
+		content.append('\n');
+		for (JavaMethod restrictedMethod : methods) {
+			content.append(restrictedMethod.contentHash()).append('\n');
+		}
+		return ContentHash.digest(content.toString());
+	}
+
 	// Returns a list of all tree nodes and their state for debug purposes
 	public String toString() {
 		return printRestrictions() + "\nTagTree:\n"
@@ -0,0 +1,200 @@
+package archimate.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IPackageBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+/**
+ * This class keeps the superclass and the superinterfaces declared by the
+ * types visited during a validation, mapped on the key of their binding. The
+ * declared supertypes of a type are resolved once, however often the type is
+ * checked. In the same way it keeps the names of the types methods are
+ * invoked on, together with the interfaces they implement. The cache is
+ * cleared at the start and the end of every validation, because the
+ * hierarchy may change in between.
+ * 
+ * @author Samuel Esposito
+ */
+public class TypeHierarchy {
+
+	// The shared instance
+	private static TypeHierarchy hierarchy;
+	// The declared supertypes mapped on the key of the type binding
+	private HashMap<String, Supertypes> types = new HashMap<String, Supertypes>();
+	// The qualified names of the types and their interfaces mapped on the key
+	// of the type binding
+	private HashMap<String, HashSet<String>> names = new HashMap<String, HashSet<String>>();
+
+	/**
+	 * The supertypes declared by a type, by their name qualified with their
+	 * package
+	 */
+	public static class Supertypes {
+		// The declared superclass, or null
+		private String superClass;
+		// The declared superinterfaces in the order of their declaration
+		private ArrayList<String> interfaces = new ArrayList<String>();
+		// The declared superinterfaces
+		private HashSet<String> interfaceSet = new HashSet<String>();
+
+		/**
+		 * Returns whether the type declares the given superclass
+		 * 
+		 * @param qualifiedName
+		 *            the qualified name of the superclass
+		 * @return Whether the type extends the class
+		 */
+		public boolean extendsClass(String qualifiedName) {
+			return qualifiedName.equals(superClass);
+		}
+
+		/**
+		 * Returns whether the type declares the given superinterface
+		 * 
+		 * @param qualifiedName
+		 *            the qualified name of the interface
+		 * @return Whether the type extends or implements the interface
+		 */
+		public boolean extendsInterface(String qualifiedName) {
+			return interfaceSet.contains(qualifiedName);
+		}
+
+		/**
+		 * Returns the declared superinterfaces in the order of their
+		 * declaration
+		 * 
+		 * @return The qualified names of the superinterfaces
+		 */
+		public ArrayList<String> interfaces() {
+			return interfaces;
+		}
+	}
+
+	/**
+	 * Returns the shared {@link TypeHierarchy}
+	 * 
+	 * @return The shared {@link TypeHierarchy}
+	 */
+	public static synchronized TypeHierarchy getDefault() {
+		if (hierarchy == null)
+			hierarchy = new TypeHierarchy();
+		return hierarchy;
+	}
+
+	/**
+	 * Returns the name of the type, qualified with its package
+	 * 
+	 * @param type
+	 *            the type binding
+	 * @return The qualified name of the type
+	 */
+	public static String qualifiedName(ITypeBinding type) {
+		IPackageBinding packageBinding = type.getPackage();
+		return qualifiedName(packageBinding != null ? packageBinding.getName()
+				: "", type.getName());
+	}
+
+	/**
+	 * Returns the name of the type, qualified with the given package
+	 * 
+	 * @param packageName
+	 *            the package of the type
+	 * @param name
+	 *            the name of the type
+	 * @return The qualified name of the type
+	 */
+	public static String qualifiedName(String packageName, String name) {
+		return packageName + "." + name;
+	}
+
+	/**
+	 * Returns the supertypes declared by the type declaration. Only supertypes
+	 * written as simple types that can be resolved are returned.
+	 * 
+	 * @param node
+	 *            the type declaration
+	 * @return The declared supertypes
+	 */
+	public Supertypes supertypes(TypeDeclaration node) {
+		ITypeBinding binding = node.resolveBinding();
+		if (binding == null)
+			return resolve(node);
+		synchronized (types) {
+			Supertypes supertypes = types.get(binding.getKey());
+			if (supertypes == null) {
+				supertypes = resolve(node);
+				types.put(binding.getKey(), supertypes);
+			}
+			return supertypes;
+		}
+	}
+
+	/**
+	 * Returns the qualified names of the type and the interfaces it
+	 * implements directly
+	 * 
+	 * @param type
+	 *            the type binding
+	 * @return The qualified names of the type and its interfaces
+	 */
+	public HashSet<String> names(ITypeBinding type) {
+		synchronized (names) {
+			HashSet<String> typeNames = names.get(type.getKey());
+			if (typeNames == null) {
+				typeNames = new HashSet<String>();
+				typeNames.add(qualifiedName(type));
+				for (ITypeBinding interfaceType : type.getInterfaces()) {
+					typeNames.add(qualifiedName(interfaceType));
+				}
+				names.put(type.getKey(), typeNames);
+			}
+			return typeNames;
+		}
+	}
+
+	/**
+	 * Discards the cached supertypes and names
+	 */
+	public void clear() {
+		synchronized (types) {
+			types.clear();
+		}
+		synchronized (names) {
+			names.clear();
+		}
+	}
+
+	// Resolves the supertypes declared by the type declaration
+	private Supertypes resolve(TypeDeclaration node) {
+		Supertypes supertypes = new Supertypes();
+		supertypes.superClass = resolve(node.getSuperclassType());
+		for (Iterator iter = node.superInterfaceTypes().iterator(); iter
+				.hasNext();) {
+			String name = resolve((Type) iter.next());
+			if (name != null) {
+				supertypes.interfaces.add(name);
+				supertypes.interfaceSet.add(name);
+			}
+		}
+		return supertypes;
+	}
+
+	// Returns the qualified name of the type, or null when it is not a simple
+	// type that can be resolved
+	private String resolve(Type type) {
+		if (type instanceof SimpleType) {
+			IBinding binding = ((SimpleType) type).resolveBinding();
+			if (binding instanceof ITypeBinding)
+				return qualifiedName((ITypeBinding) binding);
+		}
+		return null;
+	}
+}
@@ -10,6 +10,7 @@ import org.eclipse.jdt.core.dom.TypeDeclaration;
 import archimate.codegen.ICodeElement;
 import archimate.codegen.JavaHelper;
 import archimate.util.SourceInspector;
+import archimate.util.TagContext;
 import archimate.util.TagNode;
 import archimate.util.TagTree;
 
@@ -25,12 +26,16 @@ public class JavaValidator extends ASTVisitor {
 
 	// TagTree of the ICodeGenerator at hand
 	private TagTree tree;
+	// The node and source element selected while traversing the file
+	private TagContext context;
 	// JavaHelper for accessing the source code
 	private JavaHelper helper;
 	// ProgressMonitor
 	private IProgressMonitor monitor;
 	// Status
 	private MultiStatus status;
+	// Result of validating the file, kept for incremental validation
+	private ValidationCache.FileResult result;
 
 	/**
 	 * Creates a new {@link JavaValidator} and sets the {@link TagTree} and
@@ -44,8 +49,10 @@ public class JavaValidator extends ASTVisitor {
 	public JavaValidator(SourceInspector inspector, String pattern) {
 		super(true);
 		tree = inspector.tree();
+		context = tree.newContext();
 		monitor = inspector.monitor();
 		status = inspector.status();
+		result = inspector.validationResult();
 		helper = new JavaHelper(status, pattern);
 	}
 
@@ -59,20 +66,23 @@ public class JavaValidator extends ASTVisitor {
 	 */
 	public boolean visit(TypeDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
+		if (result != null)
+			result.setSource(helper.getPackage(node), helper.getImports(node));
 		if ((!tag.equals("")) && current.hasChild(tag)) {
 			TagNode self = tree.getNode(current, tag);
 			ICodeElement element = helper.compare(node, self);
 			boolean toggle = self.setVisited();
 			if (toggle)
 				monitor.worked(1);
-			tree.setCurrent(self);
+			if (result != null)
+				result.addVisit(self, element);
+			context.setCurrent(self);
 			if (self.hasChildren() && element != null) {
-				tree.setCurrentCode(element);
+				context.setCurrentCode(element);
 			}
 		}
-		helper.checkRestricted(node, tree.current(), tree
-				.restrictedInterfaces());
+		helper.checkRestricted(node, context.current(), tree);
 		return true;
 	}
 
@@ -88,16 +98,16 @@ public class JavaValidator extends ASTVisitor {
 	 */
 	public void endVisit(TypeDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasParent()
 				&& current.parent().hasChild(tag)) {
-			tree.setCurrent(current.parent());
+			context.setCurrent(current.parent());
 			if (current.hasChildren()) {
 				String name = helper.getName(node);
 				String packageName = helper.getPackage(node);
 				ICodeElement code = current.getSource(name, packageName);
 				if (code != null) {
-					tree.setCurrentCode(tree.currentCode().parent());
+					context.setCurrentCode(context.currentCode().parent());
 				}
 			}
 		}
@@ -113,15 +123,18 @@ public class JavaValidator extends ASTVisitor {
 	 */
 	public boolean visit(MethodDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasChild(tag)) {
 			TagNode self = tree.getNode(current, tag);
-			if (tree.currentCode() != null)
-				helper.compare(node, tree.currentCode(), self);
+			ICodeElement element = null;
+			if (context.currentCode() != null)
+				element = helper.compare(node, context.currentCode(), self);
 			boolean toggle = self.setVisited();
 			if (toggle)
 				monitor.worked(1);
-			tree.setCurrent(self);
+			if (result != null)
+				result.addVisit(self, element);
+			context.setCurrent(self);
 		}
 		return true;
 	}
@@ -137,10 +150,10 @@ public class JavaValidator extends ASTVisitor {
 	 */
 	public void endVisit(MethodDeclaration node) {
 		String tag = helper.getArchiMateTag(node);
-		TagNode current = tree.current();
+		TagNode current = context.current();
 		if ((!tag.equals("")) && current.hasParent()
 				&& current.parent().hasChild(tag)) {
-			tree.setCurrent(current.parent());
+			context.setCurrent(current.parent());
 		}
 	}
 
@@ -152,7 +165,8 @@ public class JavaValidator extends ASTVisitor {
 	 * MethodDeclaration)
 	 */
 	public boolean visit(MethodInvocation node) {
-		helper.checkRestricted(node, tree.current(), tree.restrictedMethods());
+		helper.checkRestricted(node, context.current(), tree
+				.restrictedMethods(node.getName().getIdentifier()));
 		return false;
 	}
 }
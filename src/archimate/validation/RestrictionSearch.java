@@ -0,0 +1,132 @@
+package archimate.validation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.IJavaSearchScope;
+import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.SearchMatch;
+import org.eclipse.jdt.core.search.SearchParticipant;
+import org.eclipse.jdt.core.search.SearchPattern;
+import org.eclipse.jdt.core.search.SearchRequestor;
+
+import archimate.util.JavaClass;
+import archimate.util.JavaMethod;
+import archimate.util.TagTree;
+
+/**
+ * This class looks up the source files that may use the restricted methods and
+ * interfaces of a {@link TagTree}, using the index of the JDT search engine
+ * instead of resolving the bindings of every file. The search matches the
+ * invocations of methods with the name of a restricted method and the
+ * references to a restricted interface, so the found files are a superset of
+ * the files that can violate a restriction. Files that are not found do not
+ * have to be validated for the restrictions.
+ * 
+ * @author Samuel Esposito
+ */
+public class RestrictionSearch {
+
+	// The tree holding the restricted methods and interfaces
+	private TagTree tree;
+
+	/**
+	 * Creates a new {@link RestrictionSearch} for the restrictions of the
+	 * given tree
+	 * 
+	 * @param tree
+	 *            the {@link TagTree} holding the restricted methods and
+	 *            interfaces
+	 */
+	public RestrictionSearch(TagTree tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Searches the given files for uses of the restricted methods and
+	 * interfaces. The identifiers of the tree have to be recorded, because
+	 * they determine the names of the restricted interfaces.
+	 * 
+	 * @param files
+	 *            the source files to search
+	 * @return The files that may use a restricted method or interface, or
+	 *         <code>null</code> when the search failed
+	 */
+	public HashSet<IFile> search(ArrayList<IFile> files) {
+		final HashSet<IFile> found = new HashSet<IFile>();
+		SearchPattern pattern = createPattern();
+		if (pattern == null || files.isEmpty())
+			return found;
+		ArrayList<IJavaElement> units = new ArrayList<IJavaElement>();
+		for (IFile file : files) {
+			ICompilationUnit unit = JavaCore.createCompilationUnitFrom(file);
+			if (unit != null)
+				units.add(unit);
+		}
+		IJavaSearchScope scope = SearchEngine.createJavaSearchScope(units
+				.toArray(new IJavaElement[units.size()]));
+		SearchRequestor requestor = new SearchRequestor() {
+			public void acceptSearchMatch(SearchMatch match) {
+				IResource resource = match.getResource();
+				if (resource instanceof IFile)
+					found.add((IFile) resource);
+			}
+		};
+		try {
+			new SearchEngine().search(pattern,
+					new SearchParticipant[] { SearchEngine
+							.getDefaultSearchParticipant() }, scope,
+					requestor, null);
+		} catch (CoreException e) {
+			System.out.println("Unable to search for restricted methods "
+					+ "and interfaces.");
+			e.printStackTrace();
+			return null;
+		}
+		return found;
+	}
+
+	// Creates the pattern matching the uses of the restricted methods and
+	// interfaces, or null when there are no restrictions
+	private SearchPattern createPattern() {
+		SearchPattern pattern = null;
+		HashSet<String> names = new HashSet<String>();
+		for (JavaMethod method : tree.restrictedMethods()) {
+			if (names.add(method.name()))
+				pattern = or(pattern, SearchPattern.createPattern(method
+						.name(), IJavaSearchConstants.METHOD,
+						IJavaSearchConstants.REFERENCES,
+						SearchPattern.R_EXACT_MATCH
+								| SearchPattern.R_CASE_SENSITIVE));
+		}
+		names.clear();
+		for (JavaClass restrictedInterface : tree.restrictedInterfaces()) {
+			String name = restrictedInterface.intendedName();
+			if (restrictedInterface.packageName().length() > 0)
+				name = restrictedInterface.packageName() + "." + name;
+			if (names.add(name))
+				pattern = or(pattern, SearchPattern.createPattern(name,
+						IJavaSearchConstants.TYPE,
+						IJavaSearchConstants.REFERENCES,
+						SearchPattern.R_EXACT_MATCH
+								| SearchPattern.R_CASE_SENSITIVE));
+		}
+		return pattern;
+	}
+
+	// Combines two patterns, ignoring the ones that are null
+	private SearchPattern or(SearchPattern left, SearchPattern right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		return SearchPattern.createOrPattern(left, right);
+	}
+}
@@ -0,0 +1,490 @@
+package archimate.validation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+
+import archimate.Activator;
+import archimate.codegen.ICodeElement;
+import archimate.util.ContentHash;
+import archimate.util.TagIndex;
+import archimate.util.TagNode;
+import archimate.util.TagTree;
+
+/**
+ * This class keeps the results of the last code validation of a pattern, so
+ * that a following validation only has to visit the source files that changed
+ * since then, together with the files depending on them. Every result is kept
+ * with the hash of the contents of the file and a fingerprint of the parts of
+ * the {@link TagTree} the file was validated against. A file is validated
+ * again when its hash or its fingerprint no longer match, the results of the
+ * other files are replayed on the {@link TagTree}. The results are stored in
+ * the state location of the plugin, so that they outlive the session.
+ * 
+ * @author Samuel Esposito
+ */
+public class ValidationCache {
+
+	// Name of the file the results are stored in
+	private static final String CACHE_FILE = "validationcache.properties";
+	// Separator between the parts of a key
+	private static final String KEY_SEPARATOR = "|";
+	// Separator between the items of a list
+	private static final String LIST_SEPARATOR = ";";
+	// Separator between the fields of an item
+	private static final String FIELD_SEPARATOR = ",";
+	// Separator between the tags of the path of a node
+	private static final String PATH_SEPARATOR = "/";
+	// The caches mapped on their pattern and package base
+	private static HashMap<String, ValidationCache> caches = new HashMap<String, ValidationCache>();
+	// The stored results of all caches
+	private static Properties store;
+	// The file the results are stored in
+	private static File storeFile;
+	// The key of the cache in the store
+	private String key;
+	// The results of the validated files mapped on their path
+	private HashMap<String, FileResult> results = new HashMap<String, FileResult>();
+	// The fingerprints of the nodes under the root of the current validation
+	// mapped on their tag
+	private HashMap<String, String> fingerprints = new HashMap<String, String>();
+	// The fingerprint of the restrictions of the current validation
+	private String restrictions = "";
+
+	/**
+	 * The result of validating a single source file
+	 */
+	public static class FileResult {
+		// The statuses reported for the file
+		private ArrayList<IStatus> statuses = new ArrayList<IStatus>();
+		// The paths of the nodes visited in the file, from the root down
+		private ArrayList<String> paths = new ArrayList<String>();
+		// The positions of the source elements visited in the file
+		private ArrayList<Integer> elements = new ArrayList<Integer>();
+		// The package of the file
+		private String packageName = "";
+		// The imports of the file
+		private ArrayList<String> imports = new ArrayList<String>();
+		// The hash of the contents of the file
+		private String hash = "";
+		// The fingerprint of the parts of the tree the file was validated
+		// against
+		private String fingerprint = "";
+
+		/**
+		 * Records the visit of a {@link TagNode} and its source element
+		 * 
+		 * @param node
+		 *            the visited node
+		 * @param element
+		 *            the visited source element, or <code>null</code> when no
+		 *            source element matched
+		 */
+		public void addVisit(TagNode node, ICodeElement element) {
+			paths.add(path(node));
+			elements.add(element == null ? -1 : node.source().indexOf(element));
+		}
+
+		/**
+		 * Sets the package and imports of the file
+		 * 
+		 * @param packageName
+		 *            the package of the file
+		 * @param imports
+		 *            the imports of the file
+		 */
+		public void setSource(String packageName, ArrayList<String> imports) {
+			this.packageName = packageName;
+			this.imports = imports;
+		}
+
+		/**
+		 * Records the statuses reported for the file
+		 * 
+		 * @param status
+		 *            the status holding the reported statuses
+		 */
+		public void addStatuses(MultiStatus status) {
+			for (IStatus child : status.getChildren()) {
+				statuses.add(child);
+			}
+		}
+
+		// Returns whether the file refers to any of the given packages
+		private boolean dependsOn(HashSet<String> packages) {
+			if (packages.contains(packageName))
+				return true;
+			for (String importName : imports) {
+				int index = importName.lastIndexOf('.');
+				if (packages.contains(importName)
+						|| (index > 0 && packages.contains(importName
+								.substring(0, index))))
+					return true;
+			}
+			return false;
+		}
+
+		// Marks the visited nodes and source elements and adds the statuses
+		private void replay(TagTree tree, MultiStatus status,
+				IProgressMonitor monitor) {
+			for (int index = 0; index < paths.size(); ++index) {
+				TagNode node = node(tree, paths.get(index));
+				if (node != null) {
+					int element = elements.get(index);
+					if (element >= 0 && element < node.source().size())
+						node.setVisited(node.source().get(element));
+					if (node.setVisited())
+						monitor.worked(1);
+				}
+			}
+			for (IStatus child : statuses) {
+				status.add(child);
+			}
+		}
+
+		// Writes the result to the store under the given key
+		private void store(Properties store, String key) {
+			store.setProperty(key + KEY_SEPARATOR + "hash", hash);
+			store.setProperty(key + KEY_SEPARATOR + "fingerprint", fingerprint);
+			StringBuilder source = new StringBuilder(packageName);
+			for (String importName : imports) {
+				source.append(LIST_SEPARATOR).append(importName);
+			}
+			store.setProperty(key + KEY_SEPARATOR + "source", source
+					.toString());
+			StringBuilder visits = new StringBuilder();
+			for (int index = 0; index < paths.size(); ++index) {
+				if (index > 0)
+					visits.append(LIST_SEPARATOR);
+				visits.append(paths.get(index)).append(FIELD_SEPARATOR).append(
+						elements.get(index));
+			}
+			store.setProperty(key + KEY_SEPARATOR + "visits", visits
+					.toString());
+			for (int index = 0; index < statuses.size(); ++index) {
+				IStatus child = statuses.get(index);
+				store.setProperty(key + KEY_SEPARATOR + "status" + index, child
+						.getSeverity()
+						+ FIELD_SEPARATOR
+						+ child.getCode()
+						+ FIELD_SEPARATOR
+						+ child.getPlugin()
+						+ FIELD_SEPARATOR + child.getMessage());
+			}
+		}
+
+		// Reads the result from the store under the given key
+		private static FileResult load(Properties store, String key) {
+			FileResult result = new FileResult();
+			result.hash = store.getProperty(key + KEY_SEPARATOR + "hash", "");
+			result.fingerprint = store.getProperty(key + KEY_SEPARATOR
+					+ "fingerprint", "");
+			String[] source = store.getProperty(
+					key + KEY_SEPARATOR + "source", "").split(LIST_SEPARATOR,
+					-1);
+			result.packageName = source[0];
+			for (int index = 1; index < source.length; ++index) {
+				result.imports.add(source[index]);
+			}
+			String visits = store.getProperty(key + KEY_SEPARATOR + "visits",
+					"");
+			for (String visit : visits.split(LIST_SEPARATOR)) {
+				String[] fields = visit.split(FIELD_SEPARATOR);
+				if (fields.length == 2) {
+					result.paths.add(fields[0]);
+					result.elements.add(Integer.valueOf(fields[1]));
+				}
+			}
+			String value;
+			for (int index = 0; (value = store.getProperty(key
+					+ KEY_SEPARATOR + "status" + index)) != null; ++index) {
+				String[] fields = value.split(FIELD_SEPARATOR, 4);
+				if (fields.length == 4)
+					result.statuses.add(new Status(Integer.parseInt(fields[0]),
+							fields[2], Integer.parseInt(fields[1]), fields[3],
+							null));
+			}
+			return result;
+		}
+	}
+
+	// Creates a new cache and reads its results from the store
+	private ValidationCache(String key) {
+		this.key = key;
+		Properties store = store();
+		String prefix = key + KEY_SEPARATOR;
+		String suffix = KEY_SEPARATOR + "hash";
+		for (Object name : store.keySet()) {
+			String property = (String) name;
+			if (property.startsWith(prefix) && property.endsWith(suffix)) {
+				String path = property.substring(prefix.length(), property
+						.length()
+						- suffix.length());
+				results.put(path, FileResult.load(store, prefix + path));
+			}
+		}
+	}
+
+	/**
+	 * Returns the cache for the given pattern and package base
+	 * 
+	 * @param pattern
+	 *            the name of the pattern
+	 * @param packageBase
+	 *            the package base of the pattern
+	 * @return The cache for the pattern and package base
+	 */
+	public static synchronized ValidationCache getCache(String pattern,
+			String packageBase) {
+		String key = pattern + ":" + packageBase;
+		ValidationCache cache = caches.get(key);
+		if (cache == null) {
+			cache = new ValidationCache(key);
+			caches.put(key, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Discards all caches. The stored results are kept.
+	 */
+	public static synchronized void disposeAll() {
+		caches.clear();
+		store = null;
+	}
+
+	/**
+	 * Selects the files that have to be validated again: the files that
+	 * changed since they were validated, the files whose parts of the
+	 * {@link TagTree} changed and the files that refer to the package of a
+	 * changed or removed file. The results of the files that were removed are
+	 * discarded. The tree has to be recorded, but not traversed yet.
+	 * 
+	 * @param tree
+	 *            the {@link TagTree} to validate against
+	 * @param files
+	 *            all source files under the package base, mapped on the hash
+	 *            of their contents
+	 * @return The files to validate again
+	 */
+	public HashSet<IFile> select(TagTree tree, HashMap<IFile, String> files) {
+		fingerprints.clear();
+		for (TagNode node : tree.root().children()) {
+			fingerprints.put(node.tag(), node.contentHash());
+		}
+		restrictions = tree.restrictionsHash();
+		HashSet<IFile> selected = new HashSet<IFile>();
+		HashSet<String> packages = new HashSet<String>();
+		HashSet<String> paths = new HashSet<String>();
+		for (IFile file : files.keySet()) {
+			String path = file.getFullPath().toString();
+			paths.add(path);
+			FileResult result = results.get(path);
+			String hash = files.get(file);
+			if (result == null || hash.length() == 0
+					|| !hash.equals(result.hash)) {
+				selected.add(file);
+				packages.add(packageName(file));
+				if (result != null)
+					packages.add(result.packageName);
+			} else if (!result.fingerprint.equals(fingerprint(tree, file,
+					result))) {
+				selected.add(file);
+			}
+		}
+		for (Iterator<String> iter = results.keySet().iterator(); iter
+				.hasNext();) {
+			String path = iter.next();
+			if (!paths.contains(path)) {
+				packages.add(results.get(path).packageName);
+				iter.remove();
+			}
+		}
+		for (IFile file : files.keySet()) {
+			FileResult result = results.get(file.getFullPath().toString());
+			if (result != null && result.dependsOn(packages))
+				selected.add(file);
+		}
+		return selected;
+	}
+
+	/**
+	 * Replays the result of the last validation of the file
+	 * 
+	 * @param file
+	 *            the file to replay the result for
+	 * @param tree
+	 *            the {@link TagTree} to mark the visited nodes in
+	 * @param status
+	 *            the status to add the reported statuses to
+	 * @param monitor
+	 *            the progress monitor
+	 */
+	public void replay(IFile file, TagTree tree, MultiStatus status,
+			IProgressMonitor monitor) {
+		FileResult result = results.get(file.getFullPath().toString());
+		if (result != null)
+			result.replay(tree, status, monitor);
+	}
+
+	/**
+	 * Stores the result of validating the file
+	 * 
+	 * @param file
+	 *            the validated file
+	 * @param hash
+	 *            the hash of the contents of the file
+	 * @param tree
+	 *            the {@link TagTree} the file was validated against
+	 * @param result
+	 *            the result of the validation
+	 */
+	public void put(IFile file, String hash, TagTree tree, FileResult result) {
+		result.hash = hash;
+		result.fingerprint = fingerprint(tree, file, result);
+		results.put(file.getFullPath().toString(), result);
+	}
+
+	/**
+	 * Writes the results of the cache to the plugin state location
+	 */
+	public void save() {
+		synchronized (ValidationCache.class) {
+			Properties store = store();
+			String prefix = key + KEY_SEPARATOR;
+			for (Iterator<Object> iter = store.keySet().iterator(); iter
+					.hasNext();) {
+				if (((String) iter.next()).startsWith(prefix))
+					iter.remove();
+			}
+			for (String path : results.keySet()) {
+				results.get(path).store(store, prefix + path);
+			}
+			if (storeFile == null)
+				return;
+			OutputStream out = null;
+			try {
+				out = new FileOutputStream(storeFile);
+				store.store(out, "archiMate validation results");
+			} catch (IOException e) {
+				System.out.println("Could not write the validation results to "
+						+ storeFile + ".");
+				e.printStackTrace();
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	// Returns the fingerprint of the parts of the tree the file is validated
+	// against: the restrictions and the nodes under the root that are
+	// declared or visited in the file
+	private String fingerprint(TagTree tree, IFile file, FileResult result) {
+		TreeSet<String> tags = new TreeSet<String>();
+		for (TagIndex.Entry entry : TagIndex.getDefault().tags(file)) {
+			tags.add(entry.tag());
+		}
+		for (String path : result.paths) {
+			tags.add(path.split(PATH_SEPARATOR)[0]);
+		}
+		StringBuilder fingerprint = new StringBuilder(restrictions);
+		for (String tag : tags) {
+			fingerprint.append(tag).append(PATH_SEPARATOR).append(
+					fingerprints.get(tag)).append("\n");
+		}
+		return ContentHash.digest(fingerprint.toString());
+	}
+
+	// Returns the path of the node: the tags of its ancestors below the root
+	// and its own tag
+	private static String path(TagNode node) {
+		String path = node.tag();
+		for (TagNode parent = node.parent(); parent != null
+				&& parent.parent() != null; parent = parent.parent()) {
+			path = parent.tag() + PATH_SEPARATOR + path;
+		}
+		return path;
+	}
+
+	// Returns the node at the path in the tree, or null when the tree holds no
+	// node at the path
+	private static TagNode node(TagTree tree, String path) {
+		TagNode node = tree.root();
+		for (String tag : path.split(PATH_SEPARATOR)) {
+			node = node.child(tag);
+			if (node == null)
+				return null;
+		}
+		return node;
+	}
+
+	// Returns the stored results, reading them from the plugin state location
+	// when needed
+	private static synchronized Properties store() {
+		if (store == null) {
+			store = new Properties();
+			if (Activator.getDefault() != null) {
+				storeFile = Activator.getDefault().getStateLocation().append(
+						CACHE_FILE).toFile();
+				load();
+			}
+		}
+		return store;
+	}
+
+	// Reads the stored results from the plugin state location
+	private static void load() {
+		if (!storeFile.exists())
+			return;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(storeFile);
+			store.load(in);
+		} catch (IOException e) {
+			System.out.println("Could not read the validation results from "
+					+ storeFile + ".");
+			e.printStackTrace();
+			store.clear();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	// Derives the package of the file from its location in the source folder
+	private String packageName(IFile file) {
+		String[] segments = file.getParent().getProjectRelativePath()
+				.segments();
+		String packageName = "";
+		for (int index = 1; index < segments.length; ++index) {
+			packageName += (index > 1 ? "." : "") + segments[index];
+		}
+		return packageName;
+	}
+}